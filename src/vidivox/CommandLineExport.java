@@ -0,0 +1,129 @@
+package vidivox;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import vidivox.export.Exporter;
+import vidivox.export.OverlayTrack;
+import vidivox.export.Project;
+
+/**
+ * This is the main class for exporting a saved project without the GUI, e.g. on a render server
+ * with no display. It reads the project, synthesizes its commentaries and exports it, writing
+ * the progress to stdout. No AWT or Swing class is used, so no display is needed.
+ *
+ * Usage: java -cp vidivox.jar vidivox.CommandLineExport project.vvproject output.mp4
+ *
+ * Adding -Dvidivox.streamingExport=true streams the mix straight into ffmpeg without writing any
+ * cache files, e.g. when the project is only exported once.
+ *
+ * The exit code is 0 if the export succeeded, 1 if it failed, 2 if the arguments were wrong and
+ * 130 if it was interrupted (e.g. with Ctrl+C)
+ */
+public class CommandLineExport {
+
+	/**
+	 * Exit codes of the export
+	 */
+	private static final int EXIT_SUCCESS = 0;
+	private static final int EXIT_FAILURE = 1;
+	private static final int EXIT_USAGE = 2;
+	private static final int EXIT_INTERRUPTED = 130;
+
+	/**
+	 * Main method for the command line export
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length != 2) {
+			System.err.println("Usage: vidivox.CommandLineExport <project.vvproject> <output.mp4>");
+			System.exit(EXIT_USAGE);
+		}
+		System.exit(export(new File(args[0]), new File(args[1])));
+	}
+
+	/**
+	 * Exports a project
+	 *
+	 * @param projectFile - the saved project
+	 * @param outputFile - the file to export to, .mp4 being added if needed
+	 * @return the exit code
+	 */
+	private static int export(File projectFile, File outputFile) {
+		Project project;
+		try {
+			project = Project.load(projectFile);
+		} catch (IOException e) {
+			System.err.println("Could not read project: " + e.getMessage());
+			return EXIT_FAILURE;
+		}
+		if (project.getVideoPath() == null || !new File(project.getVideoPath()).isFile()) {
+			System.err.println("Video of the project not found: " + project.getVideoPath());
+			return EXIT_FAILURE;
+		}
+
+		try {
+			// Synthesizing the commentaries
+			ProgressPrinter printer = new ProgressPrinter();
+			List<OverlayTrack> tracks = project.synthesize(printer);
+
+			// Exporting, stopping ffmpeg if the export is interrupted. The hook waits for the
+			// export to clean up rather than for the main thread, which never ends as it is
+			// blocked in System.exit once the JVM is shutting down
+			final Exporter exporter = new Exporter(project.getVideoPath(), tracks, Exporter.withExtension(outputFile));
+			exporter.setListener(printer);
+			final CountDownLatch exportFinished = new CountDownLatch(1);
+			Thread shutdownHook = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					exporter.cancel();
+					try {
+						exportFinished.await(5, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						// Exiting anyway
+					}
+				}
+			});
+			Runtime.getRuntime().addShutdownHook(shutdownHook);
+			try {
+				exporter.export();
+			} finally {
+				exportFinished.countDown();
+				try {
+					Runtime.getRuntime().removeShutdownHook(shutdownHook);
+				} catch (IllegalStateException e) {
+					// Already shutting down, so the hook is running
+				}
+			}
+
+			System.out.println("[100%] Exported " + exporter.getOutput().getAbsolutePath());
+			return EXIT_SUCCESS;
+		} catch (CancellationException | InterruptedException e) {
+			System.err.println("Export interrupted");
+			return EXIT_INTERRUPTED;
+		} catch (IOException e) {
+			System.err.println("Export failed: " + e.getMessage());
+			return EXIT_FAILURE;
+		}
+	}
+
+	/**
+	 * This class writes the progress of the export to stdout, a line whenever it changes
+	 */
+	private static class ProgressPrinter implements Exporter.Listener {
+
+		private String lastLine = "";		// Last line written
+
+		@Override
+		public synchronized void progress(int percent, String description) {
+			String line = String.format("[%3d%%] %s", percent, description);
+			if (!line.equals(lastLine)) {
+				System.out.println(line);
+				lastLine = line;
+			}
+		}
+	}
+}
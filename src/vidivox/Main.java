@@ -1,14 +1,14 @@
 package vidivox;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
 import javax.swing.UIManager;
+import vidivox.speech.FestivalPool;
+import vidivox.ui.ControlsPanel;
 import vidivox.ui.MainFrame;
+import vidivox.ui.PlaybackPositionUpdater;
+import vidivox.util.EdtWatchdog;
 
 /**
  * This is main class containing the main method to run the vidivox application
- * It is also used to call the UpdateRunnable class which updates the JSlider used
+ * It is also used to create the PlaybackPositionUpdater which updates the JSlider used
  * to inform the user the time at which the video is currently playing
  * 
  * @author Hanzhi Wang (partner)
@@ -17,11 +17,6 @@ import vidivox.ui.MainFrame;
  */
 public class Main {
 	
-	/** 
-	 * Creating a ScheduledExecutorService to call a specific update class at given intervals
-	 */
-	private static ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-	
 	/**
 	 * Main method for the vidivox application
 	 */
@@ -35,12 +30,19 @@ public class Main {
 			e.printStackTrace();
 		}
     	
+    	// Watching the event dispatch thread for stalls before any window is made
+    	EdtWatchdog.install();
+
+    	// Loading the festival voices in the background so the first commentary is quick
+    	FestivalPool.getInstance().warmUp();
+
     	// Creating the main frame which contains functionality for opening a video, playing the video etc.
     	MainFrame mainFrame = new MainFrame();
    		mainFrame.setVisible(true);
 		
-		// Instantiating a UpdateRunnable class to update specific components every 500 milliseconds
-		// Source: https://github.com/caprica/vlcj/blob/master/src/test/java/uk/co/caprica/vlcj/test/basic/PlayerControlsPanel.java
-		executorService.scheduleAtFixedRate(new UpdateRunnable(mainFrame.getControlsPanel()), 0L, 500L, TimeUnit.MILLISECONDS);
+		// Updating the slider and time label from the events of the media player, which only does
+		// work while the video is playing
+		ControlsPanel controlsPanel = mainFrame.getControlsPanel();
+		controlsPanel.setPositionUpdater(new PlaybackPositionUpdater(controlsPanel));
     }
 }
@@ -0,0 +1,316 @@
+package vidivox.audio;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * This class plays all of the audio overlays of the project through a single javax.sound
+ * SourceDataLine. Each overlay is decoded once through the PcmCache, and a single mixing thread
+ * sums every overlay that is audible at the current position, so starting playback does not
+ * depend on how many overlays there are. Overlays are scheduled on the frames of the timeline so
+ * each one starts at the exact sample of its start time, which is checked against the MediaClock
+ * of the video and printed for every overlay when playback stops if -Dvidivox.printLatency=true
+ * is set. The speed the timeline is played at can be trimmed and the position moved while
+ * playing, which the DriftCorrector uses to keep the overlays with the video
+ */
+public class AudioMixer {
+
+	/**
+	 * Constants for the size of the blocks mixed at a time
+	 */
+	private static final int BLOCK_FRAMES = 1024;							// Frames mixed per block (about 23ms)
+	private static final int LINE_BUFFER_BYTES = 4 * BLOCK_FRAMES * PcmDecoder.FRAME_SIZE;
+
+	/**
+	 * Fields used for the decoding and mixing of the overlays
+	 */
+	private final ExecutorService decoder = Executors.newFixedThreadPool(2);	// Threads decoding overlay files
+	private volatile List<MixerChannel> channels = new ArrayList<>();		// Channels currently being mixed
+	private volatile boolean running = false;								// Whether the mixing thread should run
+	private SourceDataLine line;											// Line the mixed audio is written to
+	private Thread mixerThread;												// Thread doing the mixing
+	private volatile MediaClock mediaClock;									// Clock of the video the start of each overlay is checked against
+	private volatile double position;										// Next timeline frame to be mixed
+	private volatile double step = 1.0;										// Timeline frames played per output frame
+	private volatile boolean held = false;									// Whether silence is played without advancing
+	private volatile long pendingPosition = -1;								// Timeline frame to jump to, -1 if none
+	private volatile long linePosition;										// Output line frame the next block is written at
+
+	/**
+	 * Starts playing the given overlays from the given position of the video
+	 *
+	 * @param overlays - overlays to play
+	 * @param positionMillis - current time of the video in milliseconds
+	 */
+	public synchronized void play(List<AudioOverlay> overlays, long positionMillis) {
+		stop();
+
+		// Creating a channel for every overlay that has an audio file
+		List<MixerChannel> newChannels = new ArrayList<>();
+		for (AudioOverlay overlay : overlays) {
+			String filePath = overlay.getFilePath();
+			if (filePath != null && !filePath.isEmpty()) {
+				newChannels.add(new MixerChannel(overlay, getSamples(filePath)));
+			}
+		}
+		channels = newChannels;
+		position = PlaybackClock.millisToFrames(positionMillis);
+		pendingPosition = -1;
+		step = 1.0;
+		held = false;
+
+		// Opening the output line the first time playback starts
+		try {
+			if (line == null) {
+				line = AudioSystem.getSourceDataLine(PcmDecoder.FORMAT);
+				line.open(PcmDecoder.FORMAT, LINE_BUFFER_BYTES);
+			}
+		} catch (LineUnavailableException e) {
+			e.printStackTrace();
+			line = null;
+			return;
+		}
+		linePosition = line.getLongFramePosition();
+		line.start();
+
+		// Starting the mixing thread
+		running = true;
+		mixerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				mix();
+			}
+		}, "Overlay audio mixer");
+		mixerThread.setDaemon(true);
+		mixerThread.start();
+	}
+
+	/**
+	 * Adds an overlay to the overlays being played, e.g. once its audio has been synthesized.
+	 * If the overlay is already playing with a different audio file, the new file replaces it
+	 *
+	 * @param overlay - the overlay to add
+	 */
+	public synchronized void add(AudioOverlay overlay) {
+		String filePath = overlay.getFilePath();
+		if (!running || filePath == null || filePath.isEmpty()) {
+			return;
+		}
+
+		// Replacing the list rather than changing it, as the mixing thread may be reading it
+		List<MixerChannel> newChannels = new ArrayList<>();
+		for (MixerChannel channel : channels) {
+			if (channel.getOverlay() != overlay) {
+				newChannels.add(channel);
+			} else if (filePath.equals(channel.getFilePath())) {
+				return;
+			}
+		}
+		newChannels.add(new MixerChannel(overlay, getSamples(filePath)));
+		channels = newChannels;
+	}
+
+	/**
+	 * Stops the playback of all overlays
+	 */
+	public synchronized void stop() {
+		boolean wasRunning = running;
+		running = false;
+		if (mixerThread != null) {
+			try {
+				mixerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			mixerThread = null;
+		}
+
+		// Dropping whatever has not been played yet
+		if (line != null) {
+			line.stop();
+			line.flush();
+		}
+
+		if (wasRunning && Boolean.getBoolean("vidivox.printLatency")) {
+			printStartErrors();
+		}
+	}
+
+	/**
+	 * Prints the measured start error of every overlay which started during the playback
+	 */
+	private void printStartErrors() {
+		for (Map.Entry<AudioOverlay, Double> startError : getStartErrors().entrySet()) {
+			System.out.println(String.format("Overlay %s started %+.1f ms from its start time",
+					startError.getKey().getFileName(), startError.getValue()));
+		}
+	}
+
+	/**
+	 * Stops playing and releases the output line
+	 */
+	public synchronized void close() {
+		stop();
+		if (line != null) {
+			line.close();
+			line = null;
+		}
+		decoder.shutdownNow();
+	}
+
+	/**
+	 * Sets the clock of the video, which the time each overlay became audible is measured against
+	 *
+	 * @param mediaClock - clock of the video
+	 */
+	public void setMediaClock(MediaClock mediaClock) {
+		this.mediaClock = mediaClock;
+	}
+
+	/**
+	 * Sets how many timeline frames are played per output frame. Values slightly away from the
+	 * playback rate resample the overlays to catch up with, or wait for, the video
+	 *
+	 * @param step - timeline frames per output frame, 1.0 being normal speed
+	 */
+	public void setStep(double step) {
+		this.step = step;
+	}
+
+	/**
+	 * Gets how many timeline frames are played per output frame
+	 */
+	public double getStep() {
+		return step;
+	}
+
+	/**
+	 * Sets whether the mixer holds its position and plays silence, e.g. while the video is stalled
+	 */
+	public void setHeld(boolean held) {
+		this.held = held;
+	}
+
+	/**
+	 * Moves the playing overlays to a new time of the video. The jump is made by the mixing
+	 * thread at the start of its next block, and audio still queued in the line is dropped
+	 *
+	 * @param positionMillis - time of the video to continue playing from
+	 */
+	public void reposition(long positionMillis) {
+		pendingPosition = PlaybackClock.millisToFrames(positionMillis);
+	}
+
+	/**
+	 * Gets the time of the overlay timeline that can currently be heard, taking the audio that
+	 * is queued in the output line into account
+	 *
+	 * @return the audible time in milliseconds
+	 */
+	public double getAudibleMillis() {
+		SourceDataLine currentLine = line;
+		double queuedFrames = (currentLine == null) ? 0 : linePosition - currentLine.getLongFramePosition();
+		return (position - queuedFrames * step) * 1000 / PcmDecoder.SAMPLE_RATE;
+	}
+
+	/**
+	 * Gets the measured start error of every overlay that has started since playback began
+	 *
+	 * @return milliseconds each overlay started late (negative if early)
+	 */
+	public Map<AudioOverlay, Double> getStartErrors() {
+		Map<AudioOverlay, Double> startErrors = new HashMap<>();
+		for (MixerChannel channel : channels) {
+			if (!Double.isNaN(channel.getStartErrorMillis())) {
+				startErrors.put(channel.getOverlay(), channel.getStartErrorMillis());
+			}
+		}
+		return startErrors;
+	}
+
+	/**
+	 * Whether the mixer is currently playing
+	 */
+	public boolean isPlaying() {
+		return running;
+	}
+
+	/**
+	 * Loop run by the mixing thread, which sums a block of every channel at a time and writes
+	 * it to the output line
+	 */
+	private void mix() {
+		int[] accumulator = new int[BLOCK_FRAMES * PcmDecoder.CHANNELS];
+		byte[] output = new byte[BLOCK_FRAMES * PcmDecoder.FRAME_SIZE];
+
+		while (running) {
+			// Making any jump that was asked for, dropping the audio queued before it
+			long jumpTo = pendingPosition;
+			if (jumpTo >= 0) {
+				pendingPosition = -1;
+				line.flush();
+				linePosition = line.getLongFramePosition();
+				position = jumpTo;
+				for (MixerChannel channel : channels) {
+					channel.resetSchedule();
+				}
+			}
+
+			// Mixing the block, or leaving it silent while the mixer is held
+			Arrays.fill(accumulator, 0);
+			double blockStep = held ? 0 : step;
+			for (MixerChannel channel : channels) {
+				channel.mixInto(accumulator, position, blockStep, BLOCK_FRAMES, linePosition);
+			}
+
+			// Clipping the sums and converting them to little endian bytes
+			for (int i = 0; i < accumulator.length; i++) {
+				int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, accumulator[i]));
+				output[2 * i] = (byte) sample;
+				output[2 * i + 1] = (byte) (sample >> 8);
+			}
+
+			// Blocks until the line has room, which paces the loop to real time
+			line.write(output, 0, output.length);
+			position += BLOCK_FRAMES * blockStep;
+			linePosition += BLOCK_FRAMES;
+
+			// Measuring the start of any overlay whose first sample has now been played
+			long played = line.getLongFramePosition();
+			for (MixerChannel channel : channels) {
+				channel.measureStart(played, mediaClock);
+			}
+		}
+	}
+
+	/**
+	 * Gets the decoded audio of a file from the PcmCache. Audio which is already mapped is used
+	 * straight away, anything else is decoded in the background so playback is not delayed
+	 */
+	private Future<PcmAudio> getSamples(final String filePath) {
+		final PcmAudio mapped = PcmCache.getInstance().getIfMapped(filePath);
+		FutureTask<PcmAudio> samples = new FutureTask<>(new Callable<PcmAudio>() {
+			@Override
+			public PcmAudio call() throws Exception {
+				return (mapped != null) ? mapped : PcmCache.getInstance().get(filePath);
+			}
+		});
+		if (mapped != null) {
+			samples.run();
+		} else {
+			decoder.execute(samples);
+		}
+		return samples;
+	}
+}
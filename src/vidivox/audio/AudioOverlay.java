@@ -9,10 +9,6 @@ import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 
 import javax.swing.JButton;
@@ -27,6 +23,7 @@ import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import vidivox.media.MediaOperations;
 import vidivox.ui.AudioOverlaysDialog;
 import vidivox.worker.AudioPlayWorker;
 
@@ -344,19 +341,7 @@ public abstract class AudioOverlay {
         if (getFilePath() != null) {
         	
         	// Getting the duration of the file and setting the label to show the duration
-            try {
-                float duration = getDuration(getFilePath());
-                
-                // Calculating the duration and formatting it into a string
-                String durationText = (int) (duration / 60) + ":" + (int) (duration % 60) 
-                						+ "." + (int) ((duration - (int) duration)*1000);
-                
-                // Setting the label to show the duration of the audio
-                durationLabel.setText(durationText);			
-                
-            } catch (InterruptedException | IOException e) {
-                durationLabel.setText("????");
-            }
+            showDuration(getFilePath());
         }
 
         return contentPane;
@@ -395,45 +380,47 @@ public abstract class AudioOverlay {
     }   
     
     /**
-     * This method is used to get the duration of a comment when it is converted to audio through the use ffprobe.
-     * It is not to be confused with getDuration(File file) as that method takes in a file
-     * and calls this method
+     * This method is used to show the duration of the audio file in the duration label. The duration
+     * is found in the background by the MediaOperations, so the event dispatch thread never waits
+     * for ffprobe, and is only shown if the file has not been changed in the meantime
      * 
      * @param filePath - path to file
-     * @return returns duration of audio
-     * @throws IOException
-     * @throws InterruptedException
      */
-    protected float getDuration(String filePath) throws IOException, InterruptedException {
+    protected void showDuration(final String filePath) {
+    	durationLabel.setText("...");
+    	MediaOperations.getInstance().getDuration(filePath, new MediaOperations.Callback<Double>() {
+    		@Override
+    		public void done(Double result) {
+    			if (!filePath.equals(getFilePath())) {
+    				return;
+    			}
+    			float duration = result.floatValue();
 
-    	// Creating and starting process to obtain duration of file
-    	Process ffProbeProcess = new ProcessBuilder("/bin/bash", "-c", "ffprobe -i \"" + filePath +
-    					"\" -show_entries format=duration 2>&1 | grep \"duration=\"").start();
-    	
-    	// Creating buffered reader to read in the output from the bash process
-    	BufferedReader reader = new BufferedReader(new InputStreamReader(ffProbeProcess.getInputStream()));
-    	ffProbeProcess.waitFor();
-    	String durationLine = reader.readLine();
-    	
-    	// Formatting the duration string so that it is returned correctly
-    	if (durationLine == null) {
-    		return 0;
-    	} else {
-    		return Float.parseFloat(durationLine.split("=")[1]);
-    	}
+    			// Calculating the duration and formatting it into a string
+    			String durationText = (int) (duration / 60) + ":" + (int) (duration % 60)
+    					+ "." + (int) ((duration - (int) duration)*1000);
+
+    			// Setting the label to show the duration of the audio
+    			durationLabel.setText(durationText);
+    			durationShown(duration);
+    		}
+
+    		@Override
+    		public void failed(Exception e) {
+    			if (filePath.equals(getFilePath())) {
+    				durationLabel.setText("????");
+    			}
+    		}
+    	});
     }
 
     /**
-     * This method takes in a file and calls the getDuration() method which takes in the 
-     * string of the file path and gets the actual duration of that audio file
+     * Method called on the event dispatch thread once the duration of the audio file has been shown,
+     * so that sub classes can check it
      * 
-     * @param file - input of which the path is to be found
-     * @return	returns the file path
-     * @throws IOException
-     * @throws InterruptedException
+     * @param duration - duration of the audio in seconds
      */
-    protected float getDuration(File file) throws IOException, InterruptedException {
-        return getDuration(file.getAbsolutePath());
+    protected void durationShown(float duration) {
     }
     
     /**
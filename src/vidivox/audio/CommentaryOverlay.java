@@ -1,4 +1,5 @@
 package vidivox.audio;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
@@ -7,7 +8,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.io.IOException;
+import java.io.File;
 
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -19,8 +20,10 @@ import javax.swing.JTextField;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
+import vidivox.media.MediaOperations;
+import vidivox.speech.SpeechCache;
 import vidivox.ui.ControlsPanel;
-import vidivox.worker.SpeechSynthesisWorker;
+import vidivox.worker.SynthesisScheduler;
 
 /**
  * This class is a subclass of the AudioOverlay class and is instantiated whenever 
@@ -37,8 +40,9 @@ public class CommentaryOverlay extends AudioOverlay {
 	 */
 	private String text;								// String storing the user's comment
 	private String filePath;							// File path of created wav file
+	private boolean failed;								// Whether the synthesis of the latest text failed
 	private int position;								// Position of the comment in the AudioOverlaysDialog
-	private SpeechSynthesisWorker synthesisWorker;		// Reference to the class that creates the wav file
+	private SynthesisScheduler synthesisScheduler;		// Schedules the synthesis of the wav file from the text
 	private JTextField textField;						// Text field where user enters comment
 	private JButton saveToFileButton;					// Button used to save commentary as mp3
 	private static ControlsPanel controlsPanel;			// Reference to the ControlsPanel class
@@ -71,18 +75,23 @@ public class CommentaryOverlay extends AudioOverlay {
 		this.volume = volume;
 		this.controlsPanel = controlsPanel;
 		
-		// Checking if the text is empty and if not, allowing the commentary to be
-		// converted into a wav file
+		// Creating the scheduler which synthesizes the text whenever it changes
+		this.synthesisScheduler = new SynthesisScheduler(this, "commentary" + position, new SynthesisScheduler.Listener() {
+			@Override
+			public void synthesized(String filePath) {
+				synthesisDone(filePath);
+			}
+
+			@Override
+			public void failed() {
+				failed = true;
+			}
+		});
+
+		// Checking if the text is empty and if not, queueing the commentary to be converted into
+		// a wav file in order of its start time, e.g. when a project is opened
 		if (text != null && !text.isEmpty()) {
-			// Instantiating class to convert from text to speech
-			new SpeechSynthesisWorker(text, "commentary" + position, getAudioOverlay()) {
-				@Override
-				protected void done() {
-					super.done();
-					// Setting the file path of the wav file
-					CommentaryOverlay.this.filePath = filePath;
-				}
-			}.execute(); // Executing worker class
+			synthesisScheduler.requestInOrder(text, startTime);
 		}
 	}
 
@@ -100,6 +109,21 @@ public class CommentaryOverlay extends AudioOverlay {
 		return text;
 	}
 
+	/**
+	 * Whether the commentary can be played, which is once its text has been synthesized
+	 */
+	public boolean isReady() {
+		return text == null || text.isEmpty() || filePath != null;
+	}
+
+	/**
+	 * Whether the synthesis of the latest text failed, in which case the commentary stays silent
+	 * until its text or voice is changed
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
 	/**
 	 * Getter for the file path variable
 	 */
@@ -208,8 +232,9 @@ public class CommentaryOverlay extends AudioOverlay {
 			// Method called whenever change occurs
 			@Override
 			public void changedUpdate(DocumentEvent documentEvent) {
-				//Storing text
+				//Storing text, which is synthesized again even if the previous text failed
 				text = textField.getText();
+				failed = false;
 				
 				// Checking if the length of the string is greater than 100 characters
 				if (text.length() >= 100) {
@@ -217,43 +242,9 @@ public class CommentaryOverlay extends AudioOverlay {
 					JOptionPane.showMessageDialog(null, "Must specify comment less than or equal 100 characters", "Error", JOptionPane.ERROR_MESSAGE);
 				
 				} else {
-					// Checking if the synthesis worker thread needs to be killed since 
-					// text is being updated
-					if (synthesisWorker != null && !synthesisWorker.isDone()) {
-						synthesisWorker.kill();
-					}
-
-					// Creating new synthesis worker to convert the text file into a wav file 
-					synthesisWorker = new SpeechSynthesisWorker(text, "commentary" + position, getAudioOverlay()) {
-						@Override
-						protected void done() {
-
-							super.done();
-							// Allowing the play button to be clicked
-							playButton.setEnabled(true);
-							// Getting the file path of the wav file
-							CommentaryOverlay.this.filePath = synthesisWorker.filePath;
-
-							// Getting the duration of the audio and storing it
-							try {
-								float duration = getDuration(filePath);
-								String durationText = (int) (duration / 60) + ":" + (int) (duration % 60) + 
-										"." + (int) ((duration - (int) duration)*1000);
-
-								// Setting the text in the label to the duration value
-								durationLabel.setText(durationText);
-								
-								// Checking if the audio is longer than the video
-								enableAudioErrorMessage(controlsPanel, duration);
-
-
-							} catch (IOException | InterruptedException e) {
-								// Error handling if there was a problem while getting duration
-								durationLabel.setText("???");
-							}
-						}
-					};
-					synthesisWorker.execute(); // Executing the process
+					// Asking for the text to be synthesized once the user stops typing, so that
+					// a synthesis is not started for every key pressed
+					synthesisScheduler.request(text);
 				}
 			}
 		});
@@ -283,79 +274,24 @@ public class CommentaryOverlay extends AudioOverlay {
 					}
 
 					// Calling method to save the comment as an mp3 file
-					try {
-						saveToMp3(fileName);
-						JOptionPane.showMessageDialog(contentPane,"Commentary sucessfully saved as " + fileName);
-					} catch (IOException | InterruptedException e) {
-						JOptionPane.showMessageDialog(contentPane,"Error saving commentary","Error saving file", JOptionPane.ERROR_MESSAGE);
-					}
+					saveToMp3(fileName, contentPane);
 				}
 			}
 		});
 
-		voiceGenderComboBox.addItemListener(new ItemListener() {
+		// Synthesizing the text again straight away when the voice or pitch is changed
+		ItemListener voiceItemListener = new ItemListener() {
 			@Override
-			public void itemStateChanged(ItemEvent e) {				
-				// Creating new synthesis worker to convert the text file into a wav file 
-				synthesisWorker = new SpeechSynthesisWorker(text, "commentary" + position, getAudioOverlay()) {
-					@Override
-					protected void done() {
-
-						super.done();
-						// Allowing the play button to be clicked
-						playButton.setEnabled(true);
-						// Getting the file path of the wav file
-						CommentaryOverlay.this.filePath = synthesisWorker.filePath;
-
-						// Getting the duration of the audio and storing it
-						try {
-							float duration = getDuration(filePath);
-							String durationText = (int) (duration / 60) + ":" + (int) (duration % 60) + 
-									"." + (int) ((duration - (int) duration)*1000);
-
-							// Setting the text in the label to the duration value
-							durationLabel.setText(durationText);
-						} catch (IOException | InterruptedException e) {
-							// Error handling if there was a problem while getting duration
-							durationLabel.setText("???");
-						}
-					}
-				};
-				synthesisWorker.execute(); // Executing the process
+			public void itemStateChanged(ItemEvent e) {
+				if (e.getStateChange() == ItemEvent.SELECTED) {
+					failed = false;
+					synthesisScheduler.requestNow(text);
+				}
 			}
-		});
+		};
+		voiceGenderComboBox.addItemListener(voiceItemListener);
+		voicePitchComboBox.addItemListener(voiceItemListener);
 
-		voicePitchComboBox.addItemListener(new ItemListener() {
-			@Override
-			public void itemStateChanged(ItemEvent e) {				
-				// Creating new synthesis worker to convert the text file into a wav file 
-				synthesisWorker = new SpeechSynthesisWorker(text, "commentary" + position, getAudioOverlay()) {
-					@Override
-					protected void done() {
-
-						super.done();
-						// Allowing the play button to be clicked
-						playButton.setEnabled(true);
-						// Getting the file path of the wav file
-						CommentaryOverlay.this.filePath = synthesisWorker.filePath;
-
-						// Getting the duration of the audio and storing it
-						try {
-							float duration = getDuration(filePath);
-							String durationText = (int) (duration / 60) + ":" + (int) (duration % 60) + 
-									"." + (int) ((duration - (int) duration)*1000);
-
-							// Setting the text in the label to the duration value
-							durationLabel.setText(durationText);
-						} catch (IOException | InterruptedException e) {
-							// Error handling if there was a problem while getting duration
-							durationLabel.setText("???");
-						}
-					}
-				};
-				synthesisWorker.execute(); // Executing the process
-			}
-		});
 		// Checking if the text is not empty and setting the text in the text field
 		if (text != null) {
 			textField.setText(text);
@@ -365,14 +301,81 @@ public class CommentaryOverlay extends AudioOverlay {
 	}
 
 	/**
-	 * Saves this commentary to a mp3 file
+	 * Called when the latest text has been synthesized to store the path of the wav file and
+	 * update the duration shown for the commentary
+	 *
+	 * @param synthesizedFilePath - path of the synthesized wav file
+	 */
+	private void synthesisDone(String synthesizedFilePath) {
+		// Getting the file path of the wav file, which is kept in the speech cache while in use
+		filePath = synthesizedFilePath;
+		failed = false;
+		SpeechCache.getInstance().use(this, new File(filePath));
+
+		// Letting the overlays that are already playing pick up the new audio
+		if (controlsPanel != null) {
+			controlsPanel.addAudioPlayer(this);
+		}
+
+		// Nothing else to update if the commentary has not been shown yet
+		if (playButton == null) {
+			return;
+		}
+
+		// Allowing the play button to be clicked
+		playButton.setEnabled(true);
+
+		// Getting the duration of the audio in the background and showing it
+		showDuration(filePath);
+	}
+
+	/**
+	 * Checks if the audio is longer than the video once its duration is known
+	 */
+	@Override
+	protected void durationShown(float duration) {
+		enableAudioErrorMessage(controlsPanel, duration);
+	}
+
+	/**
+	 * Gets the voice selected for this commentary
+	 */
+	public String getSelectedVoice() {
+		if (voiceGenderComboBox != null && voiceGenderComboBox.getSelectedItem() != null) {
+			return (String) voiceGenderComboBox.getSelectedItem();
+		}
+		return "Robotic";
+	}
+
+	/**
+	 * Gets the pitch selected for this commentary
+	 */
+	public String getSelectedPitch() {
+		if (voicePitchComboBox != null && voicePitchComboBox.getSelectedItem() != null) {
+			return (String) voicePitchComboBox.getSelectedItem();
+		}
+		return "Normal";
+	}
+
+	/**
+	 * Saves this commentary to a mp3 file. The ffmpeg process converting it is run in the background
+	 * and the user is told once it is done
 	 * @param outputFilePath the file to save to
+	 * @param parent the component the messages are shown over
 	 */
-	private void saveToMp3(final String outputFilePath) throws IOException, InterruptedException {
-		//create a  ffmpeg process to process the commentary file to an mp3
-		//(note: this is fast enough to run on the main thread without noticeable effect on UI)
-		String cmd="ffmpeg -y -i \""+getFilePath()+"\" \""+outputFilePath+"\"";
-		new ProcessBuilder("/bin/bash","-c",cmd).start().waitFor();
+	private void saveToMp3(final String outputFilePath, final Component parent) {
+		MediaOperations.getInstance().transcode(getFilePath(), outputFilePath, new MediaOperations.Callback<File>() {
+			@Override
+			public void done(File result) {
+				JOptionPane.showMessageDialog(parent,"Commentary sucessfully saved as " + outputFilePath);
+			}
+
+			@Override
+			public void failed(Exception e) {
+				System.err.println(e.getMessage());
+				JOptionPane.showMessageDialog(parent,"Error saving commentary","Error saving file", JOptionPane.ERROR_MESSAGE);
+			}
+		});
 	}
 
     /**
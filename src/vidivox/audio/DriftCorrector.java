@@ -0,0 +1,149 @@
+package vidivox.audio;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class runs a background loop which keeps the overlays played by the AudioMixer in time
+ * with the video. Every check compares the audible overlay time with the time of the video and
+ * trims the speed of the mixer slightly (resampling) to remove small drift. Large jumps, such as
+ * after a stall, are fixed by moving the mixer straight to the video time, and while the video
+ * is stalled the mixer is held so the overlays do not run ahead
+ */
+public class DriftCorrector implements Runnable {
+
+	/**
+	 * Constants tuning the correction
+	 */
+	private static final long CHECK_INTERVAL_MILLIS = 200;		// Time between checks
+	private static final double DEAD_BAND_MILLIS = 20;			// Drift that is left alone
+	private static final double JUMP_THRESHOLD_MILLIS = 300;	// Drift fixed by jumping instead of resampling
+	private static final double CORRECTION_SECONDS = 2;		// Time over which small drift is removed
+	private static final double MAX_CORRECTION = 0.05;			// Largest change to the speed (5%)
+	private static final double SMOOTHING = 0.3;				// Weight of each new drift measurement
+	private static final long STALL_MILLIS = 500;				// Time without the video advancing before holding
+
+	/**
+	 * Fields used by the loop
+	 */
+	private final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+	private final AudioMixer mixer;				// Mixer playing the overlays
+	private final MediaClock mediaClock;		// Clock of the video the overlays follow
+	private ScheduledFuture<?> loop;			// The scheduled loop, null while not running
+	private volatile double driftMillis;		// Smoothed drift, positive when the overlays are behind
+	private volatile double maxDriftMillis;		// Largest drift seen since starting
+	private volatile int jumpCount;				// Number of corrections made by jumping
+	private long lastVideoTime = -1;			// Video time at the last check
+	private long lastVideoAdvanceNanos;			// System time the video time last changed
+
+	/**
+	 * Constructor for the corrector
+	 *
+	 * @param mixer - mixer playing the overlays
+	 * @param mediaClock - clock of the video
+	 */
+	public DriftCorrector(AudioMixer mixer, MediaClock mediaClock) {
+		this.mixer = mixer;
+		this.mediaClock = mediaClock;
+	}
+
+	/**
+	 * Starts checking the drift, called whenever the overlays start playing
+	 */
+	public synchronized void start() {
+		stop();
+		driftMillis = 0;
+		maxDriftMillis = 0;
+		jumpCount = 0;
+		lastVideoTime = -1;
+		loop = executorService.scheduleWithFixedDelay(this, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops checking the drift
+	 */
+	public synchronized void stop() {
+		if (loop != null) {
+			loop.cancel(false);
+			loop = null;
+		}
+	}
+
+	/**
+	 * A single check of the drift between the video and the overlays
+	 */
+	@Override
+	public void run() {
+		if (!mixer.isPlaying()) {
+			return;
+		}
+		try {
+			long videoTime = mediaClock.getTime();
+			float rate = mediaClock.getRate();
+			long now = System.nanoTime();
+
+			// Holding the overlays while the video is paused or has stopped advancing (e.g. buffering)
+			if (videoTime != lastVideoTime) {
+				lastVideoTime = videoTime;
+				lastVideoAdvanceNanos = now;
+			}
+			boolean stalled = (now - lastVideoAdvanceNanos) > TimeUnit.MILLISECONDS.toNanos(STALL_MILLIS);
+			if (!mediaClock.isPlaying() || stalled) {
+				mixer.setHeld(true);
+				return;
+			}
+			if (rate <= 0) {
+				rate = 1;
+			}
+
+			// Measuring how far the overlays are behind (positive) or ahead of (negative) the video
+			double drift = videoTime - mixer.getAudibleMillis();
+			maxDriftMillis = Math.max(maxDriftMillis, Math.abs(drift));
+
+			if (Math.abs(drift) > JUMP_THRESHOLD_MILLIS) {
+				// Too far out to catch up smoothly, so jumping straight to the video
+				mixer.reposition(videoTime);
+				mixer.setStep(rate);
+				driftMillis = 0;
+				jumpCount++;
+			} else {
+				// Smoothing the measurement as the time reported by the video is coarse
+				driftMillis = driftMillis + SMOOTHING * (drift - driftMillis);
+				double correction = 0;
+				if (Math.abs(driftMillis) > DEAD_BAND_MILLIS) {
+					correction = driftMillis / 1000 / CORRECTION_SECONDS;
+					correction = Math.max(-MAX_CORRECTION, Math.min(MAX_CORRECTION, correction));
+				}
+				mixer.setStep(rate * (1 + correction));
+			}
+			mixer.setHeld(false);
+		} catch (RuntimeException e) {
+			// A failed check must not stop the loop
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Gets the current (smoothed) drift between the video and the overlays
+	 *
+	 * @return milliseconds the overlays are behind the video, negative if they are ahead
+	 */
+	public double getDriftMillis() {
+		return driftMillis;
+	}
+
+	/**
+	 * Gets the largest drift measured since the overlays started playing
+	 */
+	public double getMaxDriftMillis() {
+		return maxDriftMillis;
+	}
+
+	/**
+	 * Gets how many times the overlays had to jump to catch up with the video
+	 */
+	public int getJumpCount() {
+		return jumpCount;
+	}
+}
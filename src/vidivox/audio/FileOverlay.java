@@ -6,7 +6,6 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.IOException;
 
 /**
  * This class is instantiated when the user wants to add an audio file to the project.
@@ -122,16 +121,8 @@ public class FileOverlay extends AudioOverlay{
             			// Setting the label text to the name of the file
             			fileNameLabel.setText(selectedFile.getName());
             			
-            			// Getting the duration of the audio file and setting the label accordingly
-            			try {
-            				float duration = getDuration(selectedFile);
-            				// Formatting the duration string
-            				String durationText = (int) (duration / 60) + ":" + (int) (duration % 60) 
-            									  + "." + (int) ((duration - (int) duration)*1000);
-            				durationLabel.setText(durationText);
-            			} catch (InterruptedException | IOException e) {
-            				durationLabel.setText("????");
-            			}
+            			// Getting the duration of the audio file in the background and setting the label accordingly
+            			showDuration(selectedFile.getAbsolutePath());
             		} else {
             			// Disabling the user from playing the audio
             			playButton.setEnabled(false);
@@ -0,0 +1,23 @@
+package vidivox.audio;
+
+/**
+ * This interface is implemented by whatever plays the video, so that the overlay audio can
+ * be kept in time with it without the audio package depending on the video player
+ */
+public interface MediaClock {
+
+	/**
+	 * Gets the current time of the video in milliseconds
+	 */
+	long getTime();
+
+	/**
+	 * Whether the video is currently playing
+	 */
+	boolean isPlaying();
+
+	/**
+	 * Gets the rate the video is playing at (1.0 is normal speed)
+	 */
+	float getRate();
+}
@@ -0,0 +1,146 @@
+package vidivox.audio;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * This class represents one audio overlay inside the AudioMixer. It holds the decoded samples
+ * of the overlay and knows at which frame of the video timeline the overlay starts, so that
+ * it can add itself into any block of frames the mixer asks for. It also measures how far from
+ * its start time the overlay actually became audible
+ */
+public class MixerChannel {
+
+	/**
+	 * Fields used by the mixer
+	 */
+	private AudioOverlay overlay;			// Overlay this channel plays, used to read the live volume
+	private String filePath;				// Audio file the samples were decoded from
+	private Future<PcmAudio> samples;		// Decoded audio, possibly still being decoded
+	private long startFrame;				// Frame of the timeline at which the overlay starts
+	private long startLineFrame = -1;		// Frame of the output line holding the first sample, -1 if not mixed yet
+	private volatile double startErrorMillis = Double.NaN;	// Measured start error, NaN until measured
+
+	/**
+	 * Constructor for a channel
+	 *
+	 * @param overlay - the overlay being played
+	 * @param samples - the decoded (or decoding) samples of the overlay
+	 */
+	public MixerChannel(AudioOverlay overlay, Future<PcmAudio> samples) {
+		this.overlay = overlay;
+		this.filePath = overlay.getFilePath();
+		this.samples = samples;
+		this.startFrame = PlaybackClock.millisToFrames(overlay.getStartTime() * 1000);
+	}
+
+	/**
+	 * Adds this channel's samples for a block of output frames into the accumulator. Output frame
+	 * i of the block plays timeline frame blockStart + i * step, interpolating between samples
+	 * when the step is not a whole number. Channels whose audio is not decoded yet are skipped
+	 *
+	 * @param accumulator - interleaved sums for the block
+	 * @param blockStart - timeline frame played by the first frame of the block
+	 * @param step - timeline frames advanced per output frame (1.0 plays at normal speed)
+	 * @param frames - number of frames in the block
+	 * @param blockLineFrame - frame of the output line the block will be written at
+	 */
+	public void mixInto(int[] accumulator, double blockStart, double step, int frames, long blockLineFrame) {
+		PcmAudio audio = getSamplesIfReady();
+		if (audio == null || step <= 0) {
+			return;
+		}
+
+		// Working out which output frames of the block fall inside this overlay
+		long totalFrames = audio.getFrameCount();
+		double first = blockStart - startFrame;
+		int from = (int) Math.max(0, Math.ceil(-first / step));
+		int to = (int) Math.min(frames, Math.floor((totalFrames - 1 - first) / step) + 1);
+		if (from >= to) {
+			return;
+		}
+
+		// Remembering exactly where in the output the first sample of the overlay is written
+		if (startLineFrame < 0 && first <= 0) {
+			startLineFrame = blockLineFrame + from;
+		}
+
+		// Adding the (interpolated) samples scaled by the overlay volume (0 - 100)
+		float gain = overlay.getVolume() / 100f;
+		for (int i = from; i < to; i++) {
+			double sourceFrame = first + i * step;
+			long index = (long) sourceFrame;
+			float fraction = (float) (sourceFrame - index);
+			long next = (index + 1 < totalFrames) ? index + 1 : index;
+			for (int channel = 0; channel < PcmDecoder.CHANNELS; channel++) {
+				short current = audio.getSample(index, channel);
+				short following = audio.getSample(next, channel);
+				accumulator[i * PcmDecoder.CHANNELS + channel] += (int) ((current + (following - current) * fraction) * gain);
+			}
+		}
+	}
+
+	/**
+	 * Forgets where the first sample was written if it has not been played yet, used when the
+	 * output line is flushed and the overlay has to be scheduled again
+	 */
+	public void resetSchedule() {
+		if (Double.isNaN(startErrorMillis)) {
+			startLineFrame = -1;
+		}
+	}
+
+	/**
+	 * Measures the start error once the output line has played the first sample of the overlay,
+	 * by comparing the time the video player reports at which it became audible with the start
+	 * time of the overlay
+	 *
+	 * @param playedLineFrame - number of frames the output line has played
+	 * @param mediaClock - clock of the video, null if there is none to measure against
+	 */
+	public void measureStart(long playedLineFrame, MediaClock mediaClock) {
+		if (mediaClock == null || startLineFrame < 0 || !Double.isNaN(startErrorMillis) || playedLineFrame < startLineFrame) {
+			return;
+		}
+
+		// Working back to the video time at which the first sample was played
+		double audibleAtMillis = mediaClock.getTime() - PlaybackClock.framesToMillis(playedLineFrame - startLineFrame);
+		startErrorMillis = audibleAtMillis - overlay.getStartTime() * 1000;
+	}
+
+	/**
+	 * Gets the measured start error of the overlay
+	 *
+	 * @return milliseconds the overlay started late (negative if early), NaN if it has not started
+	 */
+	public double getStartErrorMillis() {
+		return startErrorMillis;
+	}
+
+	/**
+	 * Gets the overlay this channel plays
+	 */
+	public AudioOverlay getOverlay() {
+		return overlay;
+	}
+
+	/**
+	 * Gets the audio file the samples were decoded from
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Returns the decoded samples or null if they are not available (yet)
+	 */
+	private PcmAudio getSamplesIfReady() {
+		if (!samples.isDone()) {
+			return null;
+		}
+		try {
+			return samples.get();
+		} catch (InterruptedException | ExecutionException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package vidivox.audio;
+import java.io.File;
+import java.nio.ShortBuffer;
+
+/**
+ * This class holds the decoded audio of one file in the format of the PcmDecoder. The samples
+ * are a memory mapped view of a file in the PcmCache, so they take no heap space and are shared
+ * by everything playing or exporting the same file
+ */
+public class PcmAudio {
+
+	/**
+	 * Fields describing the decoded audio
+	 */
+	private final File file;				// Cache file holding the samples
+	private final ShortBuffer samples;		// Interleaved samples, two per frame
+	private final long frameCount;			// Number of frames of audio
+
+	/**
+	 * Constructor for the decoded audio
+	 *
+	 * @param file - the cache file the samples are mapped from
+	 * @param samples - little endian view of the samples
+	 */
+	public PcmAudio(File file, ShortBuffer samples) {
+		this.file = file;
+		this.samples = samples;
+		this.frameCount = samples.capacity() / PcmDecoder.CHANNELS;
+	}
+
+	/**
+	 * Gets a sample
+	 *
+	 * @param frame - the frame the sample is in
+	 * @param channel - the channel of the sample (0 left, 1 right)
+	 * @return the sample value
+	 */
+	public short getSample(long frame, int channel) {
+		return samples.get((int) (frame * PcmDecoder.CHANNELS + channel));
+	}
+
+	/**
+	 * Gets the number of frames of audio
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Gets the cache file holding the samples, which can be given to ffmpeg as raw s16le input
+	 */
+	public File getFile() {
+		return file;
+	}
+}
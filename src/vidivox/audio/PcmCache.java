@@ -0,0 +1,117 @@
+package vidivox.audio;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class caches the decoded audio of overlay files so that each file is only decoded once,
+ * both for previewing and for exporting. Every file is decoded into the PcmDecoder format and
+ * kept in ~/.vidivox/cache/pcm under a key made from its path, size and modification time, so an
+ * edited or re-synthesized file is decoded again. Cached files are memory mapped and the least
+ * recently used ones are evicted once the cache grows past its size budget
+ * (-Dvidivox.pcmCacheMegabytes, 1024MB by default)
+ */
+public class PcmCache {
+
+	/**
+	 * The single cache shared by the whole application
+	 */
+	private static final PcmCache instance = new PcmCache();
+
+	/**
+	 * Fields of the cache
+	 */
+	private final File directory = CacheDirectory.get("pcm");						// Directory of the cached files
+	private final long maxBytes = CacheDirectory.budget("vidivox.pcmCacheMegabytes", 1024);	// Size budget
+	private final Map<String, PcmAudio> mapped = new HashMap<>();					// Files mapped so far, by key
+
+	/**
+	 * Gets the cache shared by the application
+	 */
+	public static PcmCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the decoded audio of a file, decoding it only if it is not cached yet
+	 *
+	 * @param filePath - path of the wav or mp3 file
+	 * @return the decoded audio
+	 * @throws IOException if the file could not be decoded
+	 */
+	public PcmAudio get(String filePath) throws IOException {
+		String key = CacheDirectory.fileKey(new File(filePath));
+		File cacheFile = new File(directory, key + ".pcm");
+
+		// Pinning the cache file so that it cannot be evicted between being found and being mapped
+		CacheDirectory.pin(cacheFile);
+		try {
+			// Using the mapping made earlier if the cache file is still there
+			synchronized (this) {
+				PcmAudio audio = mapped.get(key);
+				if (audio != null && cacheFile.exists()) {
+					CacheDirectory.touch(cacheFile);
+					return audio;
+				}
+			}
+
+			// Decoding into a temporary file which is only renamed once complete, so that a decode
+			// which fails half way is never mistaken for a cached file
+			if (!cacheFile.exists()) {
+				File partFile = File.createTempFile(key, ".part", directory);
+				try {
+					PcmDecoder.decode(filePath, partFile);
+					if (!partFile.renameTo(cacheFile) && !cacheFile.exists()) {
+						throw new IOException("Could not store decoded audio of " + filePath);
+					}
+				} finally {
+					partFile.delete();
+				}
+			}
+			CacheDirectory.touch(cacheFile);
+			PcmAudio audio = map(cacheFile);
+
+			synchronized (this) {
+				mapped.put(key, audio);
+				// Evicting old files, which is safe for mapped files as the mappings stay valid
+				for (File evicted : CacheDirectory.trim(directory, maxBytes)) {
+					mapped.remove(evicted.getName().replace(".pcm", ""));
+				}
+			}
+			return audio;
+		} finally {
+			CacheDirectory.unpin(cacheFile);
+		}
+	}
+
+	/**
+	 * Gets the decoded audio of a file only if it has already been mapped, without decoding
+	 *
+	 * @param filePath - path of the wav or mp3 file
+	 * @return the decoded audio, or null if it is not available yet
+	 */
+	public synchronized PcmAudio getIfMapped(String filePath) {
+		return mapped.get(CacheDirectory.fileKey(new File(filePath)));
+	}
+
+	/**
+	 * Maps a cache file into memory
+	 */
+	private static PcmAudio map(File cacheFile) throws IOException {
+		if (cacheFile.length() > Integer.MAX_VALUE) {
+			throw new IOException("Decoded audio is too long to be mapped: " + cacheFile);
+		}
+		try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, cacheFile.length());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return new PcmAudio(cacheFile, buffer.asShortBuffer());
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package vidivox.audio;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * This class decodes the audio file of an overlay into the single PCM format used by the
+ * AudioMixer and the PcmCache (44.1kHz, stereo, signed 16 bit little endian). Wav files which
+ * java sound can convert by itself are decoded in the JVM, anything else (e.g. mp3) is decoded
+ * by ffmpeg
+ */
+public class PcmDecoder {
+
+	/**
+	 * Constants describing the format all overlays are decoded into
+	 */
+	public static final int SAMPLE_RATE = 44100;		// Samples per second per channel
+	public static final int CHANNELS = 2;				// Number of interleaved channels
+	public static final int FRAME_SIZE = 4;				// Bytes per frame (two 16 bit samples)
+	public static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, CHANNELS, true, false);
+
+	/**
+	 * Decodes the given file into a file of raw interleaved samples
+	 *
+	 * @param filePath - path to the wav or mp3 file
+	 * @param output - file the raw samples are written to
+	 * @throws IOException if the file could not be decoded
+	 */
+	public static void decode(String filePath, File output) throws IOException {
+
+		// Trying java sound first as it does not need another process
+		try {
+			AudioInputStream source = AudioSystem.getAudioInputStream(new File(filePath));
+			try {
+				if (AudioSystem.isConversionSupported(FORMAT, source.getFormat())) {
+					AudioInputStream converted = AudioSystem.getAudioInputStream(FORMAT, source);
+					Files.copy(converted, output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					converted.close();
+					return;
+				}
+			} finally {
+				source.close();
+			}
+		} catch (UnsupportedAudioFileException | IllegalArgumentException e) {
+			// Not a format java sound understands, ffmpeg is used instead
+		}
+
+		// Falling back to a single ffmpeg decode writing the raw samples straight to the output
+		Process decodeProcess = new ProcessBuilder("/bin/bash", "-c", "ffmpeg -v quiet -y -i \"" + filePath
+				+ "\" -f s16le -acodec pcm_s16le -ac " + CHANNELS + " -ar " + SAMPLE_RATE + " \"" + output.getAbsolutePath() + "\"").start();
+		try {
+			if (decodeProcess.waitFor() != 0) {
+				throw new IOException("ffmpeg could not decode " + filePath);
+			}
+		} catch (InterruptedException e) {
+			decodeProcess.destroy();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while decoding " + filePath);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package vidivox.audio;
+
+/**
+ * This class converts between the time of the video and frames of the overlay timeline, which
+ * the AudioMixer and the exports use to place every overlay at an exact sample of its start time
+ * rather than after a sleep
+ */
+public class PlaybackClock {
+
+	/**
+	 * Converts a time in milliseconds into the nearest frame of the timeline
+	 */
+	public static long millisToFrames(double millis) {
+		return Math.round(millis * PcmDecoder.SAMPLE_RATE / 1000);
+	}
+
+	/**
+	 * Converts a number of frames into milliseconds
+	 */
+	public static double framesToMillis(long frames) {
+		return frames * 1000.0 / PcmDecoder.SAMPLE_RATE;
+	}
+}
@@ -0,0 +1,110 @@
+package vidivox.benchmark;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import vidivox.media.AudioHeaders;
+import vidivox.media.MediaInfo;
+
+/**
+ * This class compares how long it takes to get the duration of audio files by reading their
+ * headers in Java against the way it was done before, running ffprobe through bash and grep.
+ * Each file is timed over a number of runs with both, and the durations found are printed
+ * next to each other so that any disagreement shows.
+ *
+ * Usage: java vidivox.benchmark.DurationBenchmark [file.wav|file.mp3 ...]
+ * (a 60 second WAV is written to a temporary file if no file is given)
+ */
+public class DurationBenchmark {
+
+	/**
+	 * Number of times each file is read with each method
+	 */
+	private static final int RUNS = 20;
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<File> files = new ArrayList<>();
+		for (String arg : args) {
+			files.add(new File(arg));
+		}
+		if (files.isEmpty()) {
+			files.add(writeWav(60));
+		}
+
+		System.out.println(String.format("%-40s %12s %12s %12s %12s", "file", "headers (s)", "ffprobe (s)",
+				"headers (ms)", "ffprobe (ms)"));
+		for (File file : files) {
+			// Reading the headers, once first so that class loading is not measured
+			MediaInfo info = AudioHeaders.read(file);
+			long start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				info = AudioHeaders.read(file);
+			}
+			double headersMillis = (System.nanoTime() - start) / 1e6 / RUNS;
+
+			// Running ffprobe the way AudioOverlay used to
+			float ffprobeDuration = ffprobeDuration(file);
+			start = System.nanoTime();
+			for (int i = 0; i < RUNS; i++) {
+				ffprobeDuration = ffprobeDuration(file);
+			}
+			double ffprobeMillis = (System.nanoTime() - start) / 1e6 / RUNS;
+
+			System.out.println(String.format("%-40s %12s %12s %12.3f %12.3f", file.getName(),
+					(info != null) ? String.format("%.3f", info.getDurationSeconds()) : "unreadable",
+					(ffprobeDuration >= 0) ? String.format("%.3f", ffprobeDuration) : "failed", headersMillis, ffprobeMillis));
+		}
+	}
+
+	/**
+	 * Gets the duration of a file by running ffprobe through bash and grep
+	 *
+	 * @return the duration in seconds, or -1 if ffprobe gave none
+	 */
+	private static float ffprobeDuration(File file) throws IOException, InterruptedException {
+		Process ffProbeProcess = new ProcessBuilder("/bin/bash", "-c", "ffprobe -i \"" + file.getAbsolutePath() +
+				"\" -show_entries format=duration 2>&1 | grep \"duration=\"").start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(ffProbeProcess.getInputStream()));
+		ffProbeProcess.waitFor();
+		String durationLine = reader.readLine();
+		try {
+			return (durationLine == null) ? -1 : Float.parseFloat(durationLine.split("=")[1]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Writes a silent 16 bit mono WAV like the ones text2wave makes
+	 *
+	 * @param seconds - length of the file
+	 * @return the temporary file
+	 */
+	private static File writeWav(int seconds) throws IOException {
+		File file = File.createTempFile("vidivox-benchmark", ".wav");
+		file.deleteOnExit();
+		int sampleRate = 16000;
+		int dataBytes = seconds * sampleRate * 2;
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+			out.writeBytes("RIFF");
+			out.writeInt(Integer.reverseBytes(36 + dataBytes));
+			out.writeBytes("WAVEfmt ");
+			out.writeInt(Integer.reverseBytes(16));
+			out.writeShort(Short.reverseBytes((short) 1));
+			out.writeShort(Short.reverseBytes((short) 1));
+			out.writeInt(Integer.reverseBytes(sampleRate));
+			out.writeInt(Integer.reverseBytes(sampleRate * 2));
+			out.writeShort(Short.reverseBytes((short) 2));
+			out.writeShort(Short.reverseBytes((short) 16));
+			out.writeBytes("data");
+			out.writeInt(Integer.reverseBytes(dataBytes));
+			out.write(new byte[dataBytes]);
+		}
+		return file;
+	}
+}
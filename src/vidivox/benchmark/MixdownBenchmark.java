@@ -0,0 +1,122 @@
+package vidivox.benchmark;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import vidivox.audio.PcmAudio;
+import vidivox.audio.PcmDecoder;
+import vidivox.export.MixSource;
+import vidivox.export.SegmentRenderer;
+
+/**
+ * This class measures how the parallel mixing of export segments scales with the number of
+ * threads. It mixes a long synthetic project (the audio of the video plus many overlays) with
+ * 1, 2, 4, ... threads up to the number of cores, each time from an empty cache, and prints
+ * the throughput as a multiple of real time.
+ *
+ * Usage: java -Dvidivox.cacheDirectory=/tmp/vidivox-benchmark vidivox.benchmark.MixdownBenchmark [minutes] [overlays]
+ * (60 minutes and 200 overlays by default). The cache directory is emptied between runs, so it
+ * should not be the real cache
+ */
+public class MixdownBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int minutes = (args.length > 0) ? Integer.parseInt(args[0]) : 60;
+		int overlayCount = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		if (System.getProperty("vidivox.cacheDirectory") == null) {
+			System.setProperty("vidivox.cacheDirectory", Files.createTempDirectory("vidivox-benchmark").toString());
+		}
+		File segmentDirectory = new File(System.getProperty("vidivox.cacheDirectory"), "segments");
+
+		// Building a project with the audio of the video running the whole length and short
+		// overlays spread over it, all held in memory so decoding is not part of the measurement
+		long totalFrames = (long) minutes * 60 * PcmDecoder.SAMPLE_RATE;
+		Random random = new Random(42);
+		List<MixSource> sources = new ArrayList<>();
+		sources.add(new MixSource(noise(totalFrames, random), "video", 0, 1));
+		for (int i = 0; i < overlayCount; i++) {
+			long length = (2 + random.nextInt(8)) * (long) PcmDecoder.SAMPLE_RATE;
+			long start = (long) (random.nextDouble() * (totalFrames - length));
+			sources.add(new MixSource(noise(length, random), "overlay" + i, start, 0.5f + random.nextFloat() / 2));
+		}
+
+		System.out.println(String.format("Mixing %d minutes with %d overlays on a machine with %d cores",
+				minutes, overlayCount, Runtime.getRuntime().availableProcessors()));
+		System.out.println("threads\tseconds\tx real time\tspeed up");
+
+		// Warming up the JIT on a short run first
+		run(sources, PcmDecoder.SAMPLE_RATE * 60L, 1, segmentDirectory);
+
+		double singleThreaded = 0;
+		for (int threads : threadCounts()) {
+			double seconds = run(sources, totalFrames, threads, segmentDirectory);
+			if (threads == 1) {
+				singleThreaded = seconds;
+			}
+			System.out.println(String.format("%d\t%.2f\t%.0fx\t\t%.2f", threads, seconds,
+					minutes * 60 / seconds, singleThreaded / seconds));
+		}
+		empty(segmentDirectory);
+	}
+
+	/**
+	 * Mixes the whole timeline from an empty cache on the given number of threads
+	 *
+	 * @return the time taken in seconds
+	 */
+	private static double run(List<MixSource> sources, long totalFrames, int threads, File segmentDirectory) throws IOException {
+		empty(segmentDirectory);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long start = System.nanoTime();
+			SegmentRenderer renderer = new SegmentRenderer(sources, totalFrames);
+			renderer.renderAll(pool, null);
+			renderer.release();
+			return (System.nanoTime() - start) / 1000000000.0;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Gets the thread counts to measure: powers of two up to the number of cores, and the number
+	 * of cores itself
+	 */
+	private static List<Integer> threadCounts() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		List<Integer> counts = new ArrayList<>();
+		for (int threads = 1; threads < cores; threads *= 2) {
+			counts.add(threads);
+		}
+		counts.add(cores);
+		return counts;
+	}
+
+	/**
+	 * Makes quiet random audio held in memory
+	 */
+	private static PcmAudio noise(long frames, Random random) {
+		ShortBuffer samples = ShortBuffer.allocate((int) (frames * PcmDecoder.CHANNELS));
+		for (int i = 0; i < samples.capacity(); i++) {
+			samples.put(i, (short) (random.nextInt(8192) - 4096));
+		}
+		return new PcmAudio(null, samples);
+	}
+
+	/**
+	 * Deletes every segment mixed by an earlier run
+	 */
+	private static void empty(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+}
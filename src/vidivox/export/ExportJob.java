@@ -0,0 +1,273 @@
+package vidivox.export;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is one export waiting in, or run by, the ExportQueue. It is either the project
+ * currently being edited, whose overlays have already been synthesized, or a saved project file
+ * whose commentaries are synthesized when the job runs. The job keeps its progress, throughput
+ * and estimated time left. Pausing a job stops its ffmpeg process, and resuming it runs the
+ * export again, which picks up the audio segments and stem already mixed from their caches
+ */
+public class ExportJob {
+
+	/**
+	 * Priorities of jobs, higher priority jobs being started first
+	 */
+	public enum Priority {
+		HIGH, NORMAL, LOW
+	}
+
+	/**
+	 * States a job goes through
+	 */
+	public enum State {
+		QUEUED, RUNNING, PAUSED, DONE, FAILED, CANCELLED
+	}
+
+	/**
+	 * Counter keeping jobs of equal priority in the order they were added
+	 */
+	private static final AtomicLong jobs = new AtomicLong();
+
+	/**
+	 * Fields describing the job
+	 */
+	private final long sequence = jobs.getAndIncrement();	// Order the job was added in
+	private final String videoPath;							// Path to the video, null if it comes from the project file
+	private final List<OverlayTrack> tracks;				// Overlays, null if they come from the project file
+	private final File projectFile;							// Saved project to export, null for the current project
+	private final File output;								// File being exported to
+	private volatile Priority priority;						// Priority of the job
+	private VideoEffects effects = VideoEffects.NONE;		// Effects baked into the video
+	private volatile State state = State.QUEUED;			// Current state of the job
+	private volatile boolean pauseRequested = false;		// Whether the running export is being paused
+	private volatile Exporter exporter;						// Export currently running, if any
+	private volatile Thread thread;							// Thread running the job, if any
+
+	/**
+	 * Fields describing the progress of the job
+	 */
+	private volatile int percent = 0;				// Percentage of the export done
+	private volatile String description = "Waiting";	// Description of what the export is doing
+	private volatile double speed = 0;				// Seconds of video exported per second
+	private volatile double remainingSeconds = -1;	// Estimated time left, -1 if not known yet
+	private long runStartNanos;						// System time the job was last started or resumed
+
+	/**
+	 * Constructor for a job exporting the project being edited
+	 *
+	 * @param videoPath - path to the video
+	 * @param tracks - snapshot of the overlays
+	 * @param output - file to export to
+	 * @param priority - priority of the job
+	 */
+	public ExportJob(String videoPath, List<OverlayTrack> tracks, File output, Priority priority) {
+		this.videoPath = videoPath;
+		this.tracks = tracks;
+		this.projectFile = null;
+		this.output = Exporter.withExtension(output);
+		this.priority = priority;
+	}
+
+	/**
+	 * Constructor for a job exporting a saved project
+	 *
+	 * @param projectFile - the saved project
+	 * @param output - file to export to
+	 * @param priority - priority of the job
+	 */
+	public ExportJob(File projectFile, File output, Priority priority) {
+		this.videoPath = null;
+		this.tracks = null;
+		this.projectFile = projectFile;
+		this.output = Exporter.withExtension(output);
+		this.priority = priority;
+	}
+
+	/**
+	 * Sets the video effects baked into the export, before the job is submitted
+	 */
+	public void setEffects(VideoEffects effects) {
+		this.effects = effects;
+	}
+
+	/**
+	 * Runs the export, called by the ExportQueue on one of its threads
+	 */
+	void run() {
+		thread = Thread.currentThread();
+		runStartNanos = System.nanoTime();
+
+		// A resumed export runs again from the start (quicker for what is cached), so its
+		// progress is shown for the new run
+		percent = 0;
+		remainingSeconds = -1;
+		Exporter.Listener listener = new Exporter.Listener() {
+			@Override
+			public void progress(int percent, String description) {
+				update(percent, description);
+			}
+		};
+
+		try {
+			// Reading and synthesizing a saved project first
+			String jobVideoPath = videoPath;
+			List<OverlayTrack> jobTracks = tracks;
+			if (projectFile != null) {
+				Project project = Project.load(projectFile);
+				jobVideoPath = project.getVideoPath();
+				jobTracks = project.synthesize(listener);
+			}
+			if (jobVideoPath == null) {
+				throw new IOException("The project has no video");
+			}
+
+			exporter = new Exporter(jobVideoPath, jobTracks, output);
+			exporter.setListener(listener);
+			exporter.setEffects(effects);
+			if (pauseRequested || state == State.CANCELLED) {
+				exporter.cancel();
+			}
+			exporter.export();
+			finish(State.DONE, "Exported to " + output.getAbsolutePath());
+			percent = 100;
+		} catch (CancellationException | InterruptedException e) {
+			finish(pauseRequested ? State.PAUSED : State.CANCELLED, pauseRequested ? "Paused" : "Cancelled");
+		} catch (IOException e) {
+			finish(State.FAILED, "Failed: " + e.getMessage());
+		} catch (RuntimeException e) {
+			// Anything unexpected still ends the job, so it never stays running
+			e.printStackTrace();
+			finish(State.FAILED, "Failed: " + e);
+		} finally {
+			exporter = null;
+			thread = null;
+			pauseRequested = false;
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Stops the running export so that the job can be paused or cancelled
+	 *
+	 * @param pause - true to pause the job, false to cancel it
+	 */
+	void stop(boolean pause) {
+		pauseRequested = pause;
+		if (!pause) {
+			state = State.CANCELLED;
+		}
+		Exporter running = exporter;
+		if (running != null) {
+			running.cancel();
+		}
+		Thread runningThread = thread;
+		if (runningThread != null && exporter == null) {
+			// Still synthesizing the commentaries of a saved project
+			runningThread.interrupt();
+		}
+	}
+
+	/**
+	 * Sets the state of the job, called by the ExportQueue
+	 */
+	void setState(State state) {
+		this.state = state;
+		if (state == State.QUEUED) {
+			description = (percent > 0) ? "Waiting to resume" : "Waiting";
+		} else if (state == State.PAUSED && thread == null) {
+			description = "Paused";
+		} else if (state == State.CANCELLED && thread == null) {
+			description = "Cancelled";
+		}
+	}
+
+	/**
+	 * Records the end of a run of the job
+	 */
+	private void finish(State finalState, String finalDescription) {
+		state = finalState;
+		description = finalDescription;
+		speed = 0;
+		remainingSeconds = (finalState == State.DONE) ? 0 : -1;
+	}
+
+	/**
+	 * Records new progress of the export, working out its throughput and the time left from the
+	 * progress made since the job was last started or resumed. The progress of a run never goes
+	 * backwards
+	 */
+	private void update(int newPercent, String newDescription) {
+		percent = Math.max(percent, newPercent);
+		description = newDescription;
+		double elapsed = (System.nanoTime() - runStartNanos) / 1000000000.0;
+		double percentPerSecond = percent / elapsed;
+		if (elapsed > 1 && percentPerSecond > 0) {
+			remainingSeconds = (100 - percent) / percentPerSecond;
+			Exporter running = exporter;
+			speed = (running != null) ? percentPerSecond / 100 * running.getDurationSeconds() : 0;
+		}
+	}
+
+	/**
+	 * Gets the file being exported to
+	 */
+	public File getOutput() {
+		return output;
+	}
+
+	/**
+	 * Gets a name for the job to show to the user
+	 */
+	public String getName() {
+		return (projectFile != null) ? projectFile.getName() + " -> " + output.getName() : output.getName();
+	}
+
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority of the job, which only matters while it is waiting
+	 */
+	public void setPriority(Priority priority) {
+		this.priority = priority;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public int getPercent() {
+		return percent;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Gets the throughput of the export in seconds of video exported per second, 0 if not known
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Gets the estimated time left in seconds, -1 if it is not known yet
+	 */
+	public double getRemainingSeconds() {
+		return remainingSeconds;
+	}
+
+	/**
+	 * Gets the order the job was added in
+	 */
+	long getSequence() {
+		return sequence;
+	}
+}
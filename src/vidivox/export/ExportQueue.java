@@ -0,0 +1,265 @@
+package vidivox.export;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * This class runs the exports of the application one after another instead of all at once.
+ * Jobs wait in the queue until one of a limited number of slots is free (one by default, set
+ * with -Dvidivox.exportConcurrency or changed while running), and the waiting job with the
+ * highest priority is started first, jobs of the same priority starting in the order they were
+ * added. Jobs can be paused, which frees their slot, and resumed later. The queue does not
+ * depend on Swing, so it reports changes through a Listener
+ */
+public class ExportQueue {
+
+	/**
+	 * Interface used to report changes to the jobs
+	 */
+	public interface Listener {
+		/**
+		 * Called from any thread whenever a job is added, changes state or makes progress
+		 *
+		 * @param job - the job that changed
+		 */
+		void jobChanged(ExportJob job);
+	}
+
+	/**
+	 * The single queue shared by the whole application
+	 */
+	private static final ExportQueue instance = new ExportQueue(Integer.getInteger("vidivox.exportConcurrency", 1));
+
+	/**
+	 * Fields of the queue
+	 */
+	private final List<ExportJob> jobs = new ArrayList<>();								// Every job, in the order added
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();				// Listeners informed of changes
+	private int maxRunning;																// Most jobs run at once
+	private int running = 0;															// Jobs currently running
+
+	/**
+	 * Gets the queue shared by the application
+	 */
+	public static ExportQueue getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Constructor for the queue
+	 *
+	 * @param maxRunning - the most jobs run at once
+	 */
+	private ExportQueue(int maxRunning) {
+		this.maxRunning = Math.max(1, maxRunning);
+	}
+
+	/**
+	 * Adds a job to the queue, starting it straight away if there is a free slot
+	 *
+	 * @param job - the job to add
+	 */
+	public void submit(ExportJob job) {
+		synchronized (this) {
+			jobs.add(job);
+		}
+		fireChanged(job);
+		dispatch();
+	}
+
+	/**
+	 * Pauses a job. A running job is stopped and its slot given to the next waiting job
+	 *
+	 * @param job - the job to pause
+	 */
+	public void pause(ExportJob job) {
+		synchronized (this) {
+			if (job.getState() == ExportJob.State.QUEUED) {
+				job.setState(ExportJob.State.PAUSED);
+			} else if (job.getState() == ExportJob.State.RUNNING) {
+				job.stop(true);
+			}
+		}
+		fireChanged(job);
+	}
+
+	/**
+	 * Resumes a paused job, or runs a failed one again, by putting it back in the queue
+	 *
+	 * @param job - the job to resume
+	 */
+	public void resume(ExportJob job) {
+		synchronized (this) {
+			if (job.getState() == ExportJob.State.PAUSED || job.getState() == ExportJob.State.FAILED) {
+				job.setState(ExportJob.State.QUEUED);
+			}
+		}
+		fireChanged(job);
+		dispatch();
+	}
+
+	/**
+	 * Cancels a job, stopping it if it is running
+	 *
+	 * @param job - the job to cancel
+	 */
+	public void cancel(ExportJob job) {
+		synchronized (this) {
+			if (job.getState() == ExportJob.State.RUNNING) {
+				job.stop(false);
+			} else if (job.getState() == ExportJob.State.QUEUED || job.getState() == ExportJob.State.PAUSED) {
+				job.setState(ExportJob.State.CANCELLED);
+			}
+		}
+		fireChanged(job);
+	}
+
+	/**
+	 * Changes the priority of a job, which decides when it starts if it is waiting
+	 *
+	 * @param job - the job
+	 * @param priority - the new priority
+	 */
+	public void setPriority(ExportJob job, ExportJob.Priority priority) {
+		job.setPriority(priority);
+		fireChanged(job);
+	}
+
+	/**
+	 * Removes the jobs which have finished, failed or been cancelled
+	 */
+	public synchronized void removeFinished() {
+		List<ExportJob> finished = new ArrayList<>();
+		for (ExportJob job : jobs) {
+			ExportJob.State state = job.getState();
+			if (state == ExportJob.State.DONE || state == ExportJob.State.FAILED || state == ExportJob.State.CANCELLED) {
+				finished.add(job);
+			}
+		}
+		jobs.removeAll(finished);
+	}
+
+	/**
+	 * Sets the most jobs run at once, starting waiting jobs if the limit was raised. Running jobs
+	 * are not stopped if it was lowered
+	 *
+	 * @param maxRunning - the most jobs run at once
+	 */
+	public void setMaxRunning(int maxRunning) {
+		synchronized (this) {
+			this.maxRunning = Math.max(1, maxRunning);
+		}
+		dispatch();
+	}
+
+	public synchronized int getMaxRunning() {
+		return maxRunning;
+	}
+
+	/**
+	 * Gets every job in the order they were added
+	 */
+	public synchronized List<ExportJob> getJobs() {
+		return new ArrayList<>(jobs);
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Informs the listeners of a change to a job
+	 */
+	void fireChanged(ExportJob job) {
+		for (Listener listener : listeners) {
+			listener.jobChanged(job);
+		}
+	}
+
+	/**
+	 * Starts the waiting jobs with the highest priority while there are free slots
+	 */
+	private void dispatch() {
+		List<ExportJob> started = new ArrayList<>();
+		synchronized (this) {
+			List<ExportJob> waiting = new ArrayList<>();
+			for (ExportJob job : jobs) {
+				if (job.getState() == ExportJob.State.QUEUED) {
+					waiting.add(job);
+				}
+			}
+			Collections.sort(waiting, new Comparator<ExportJob>() {
+				@Override
+				public int compare(ExportJob a, ExportJob b) {
+					int byPriority = a.getPriority().compareTo(b.getPriority());
+					return (byPriority != 0) ? byPriority : Long.compare(a.getSequence(), b.getSequence());
+				}
+			});
+			for (ExportJob job : waiting) {
+				if (running >= maxRunning) {
+					break;
+				}
+				running++;
+				job.setState(ExportJob.State.RUNNING);
+				started.add(job);
+			}
+		}
+		for (ExportJob job : started) {
+			start(job);
+		}
+	}
+
+	/**
+	 * Runs a job on its own thread, giving its slot to the next job once it stops
+	 */
+	private void start(final ExportJob job) {
+		fireChanged(job);
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				// Reporting progress at most a few times a second while the job runs
+				Thread reporter = startReporting(job);
+				try {
+					job.run();
+				} finally {
+					reporter.interrupt();
+					synchronized (ExportQueue.this) {
+						running--;
+					}
+					fireChanged(job);
+					dispatch();
+				}
+			}
+		}, "Export " + job.getOutput().getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts a thread informing the listeners of the progress of a running job twice a second
+	 */
+	private Thread startReporting(final ExportJob job) {
+		Thread reporter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(500);
+						fireChanged(job);
+					}
+				} catch (InterruptedException e) {
+					// The job has stopped
+				}
+			}
+		}, "Export progress");
+		reporter.setDaemon(true);
+		reporter.start();
+		return reporter;
+	}
+}
@@ -0,0 +1,548 @@
+package vidivox.export;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import vidivox.audio.PcmCache;
+import vidivox.audio.PcmDecoder;
+import vidivox.audio.PlaybackClock;
+import vidivox.media.MediaInfo;
+import vidivox.media.MediaProbe;
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class exports a project into a single video file. The audio of the video and every
+ * overlay are first mixed into a stem, which is kept in the StemCache (the mix itself being
+ * cached in segments so that an edit only mixes the segments it touches), and the stem is then
+ * muxed with the video without encoding either of them again. Exporting a project whose audio
+ * has not changed therefore skips straight to the mux. The class does not depend on Swing, so
+ * the progress is reported through a Listener.
+ *
+ * Video effects set with setEffects are applied by the same ffmpeg process which muxes the audio,
+ * so the video is only encoded again when an effect has been changed.
+ *
+ * In streaming mode (set with setStreaming, or -Dvidivox.streamingExport=true) nothing is cached:
+ * every source is decoded by its own ffmpeg process into a pipe while the mix is around it (see
+ * StreamedMixSource), the mix is made block by block as ffmpeg reads it from its stdin, and it is
+ * encoded in the same ffmpeg process that copies the video. No decoded audio, stem or segment
+ * file is written, and the memory used does not grow with the length of the video
+ */
+public class Exporter {
+
+	/**
+	 * Share of the progress taken by mixing the stem, the rest being the mux
+	 */
+	private static final int MIX_PERCENT = 90;
+
+	/**
+	 * Frames mixed at a time when streaming the mix into ffmpeg (about 190ms)
+	 */
+	private static final int STREAM_BLOCK_FRAMES = 8192;
+
+	/**
+	 * Interface used to report the progress of an export
+	 */
+	public interface Listener {
+		/**
+		 * Called from the exporting thread whenever there is new progress
+		 *
+		 * @param percent - percentage of the export done
+		 * @param description - description of the progress for the user
+		 */
+		void progress(int percent, String description);
+	}
+
+	/**
+	 * Fields describing the export
+	 */
+	private final String videoPath;					// Path to the video being exported
+	private final List<OverlayTrack> tracks;		// Overlays mixed into the video
+	private final File output;						// File being exported to
+	private Listener listener;						// Listener informed of the progress, if any
+	private volatile Process process;				// The ffmpeg process currently running, if any
+	private volatile SegmentRenderer renderer;		// Renderer mixing the audio, once mixing has started
+	private volatile boolean cancelled = false;		// Whether the export has been cancelled
+	private double audioEnd = 0;					// Time the last overlay ends at in seconds
+	private volatile double durationSeconds = 0;	// Length of the export, once known
+	private boolean videoHasAudio;					// Whether the video has an audio stream
+	private boolean streaming = Boolean.getBoolean("vidivox.streamingExport");	// Whether the mix is streamed into the mux
+	private VideoEffects effects = VideoEffects.NONE;	// Effects baked into the video
+
+	/**
+	 * Constructor for an export
+	 *
+	 * @param videoPath - path to the video being exported
+	 * @param tracks - the overlays mixed into the video
+	 * @param output - file to export to
+	 */
+	public Exporter(String videoPath, List<OverlayTrack> tracks, File output) {
+		this.videoPath = videoPath;
+		this.tracks = tracks;
+		this.output = output;
+	}
+
+	/**
+	 * Gets the file a project is exported to, adding .mp4 to its name if needed
+	 *
+	 * @param file - the file chosen by the user
+	 */
+	public static File withExtension(File file) {
+		if (file.getName().endsWith(".mp4")) {
+			return file;
+		}
+		return new File(file.getAbsolutePath() + ".mp4");
+	}
+
+	/**
+	 * Sets the listener informed of the progress
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets whether the mix is streamed straight into the mux instead of going through the caches
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
+	/**
+	 * Sets the video effects applied to the exported video
+	 */
+	public void setEffects(VideoEffects effects) {
+		this.effects = (effects != null) ? effects : VideoEffects.NONE;
+	}
+
+	/**
+	 * Gets the file being exported to
+	 */
+	public File getOutput() {
+		return output;
+	}
+
+	/**
+	 * Gets the length of the video being exported in seconds, or 0 until it is known
+	 */
+	public double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	/**
+	 * Exports the project, blocking until it is done
+	 *
+	 * @throws IOException if ffmpeg failed, with the last of its error output as the message
+	 * @throws CancellationException if the export was cancelled
+	 */
+	public void export() throws IOException {
+		try {
+			MediaInfo info = MediaProbe.getInstance().get(videoPath);
+			videoHasAudio = (info != null) && info.hasAudio();
+			double duration = (info != null) ? info.getDurationSeconds() : 0;
+			durationSeconds = duration;
+
+			// A video without overlays only has to be copied
+			if (tracks.isEmpty()) {
+				runFfmpeg("-i \"" + videoPath + "\" -map 0 -c copy" + getVideoOptions() + " \"" + output.getAbsolutePath() + "\"",
+						duration, effects.isDefault() ? "Copying video..." : "Applying video effects...", 0, 100);
+				return;
+			}
+
+			// Mixing while ffmpeg muxes, without writing anything but the output
+			if (streaming) {
+				exportStreaming(duration);
+				return;
+			}
+
+			// Mixing the stem unless an identical one was mixed by an earlier export
+			// The stem is pinned so another export cannot evict it before it has been muxed
+			StemCache cache = StemCache.getInstance();
+			String key = cache.key(videoPath, tracks);
+			cache.pin(key);
+			try {
+				File stem = cache.lookup(key);
+				int muxFrom = 0;
+				if (stem == null) {
+					stem = mixStem(key, duration);
+					muxFrom = MIX_PERCENT;
+				}
+
+				// Putting the stem next to the video, copying both streams as they are
+				durationSeconds = Math.max(duration, audioEnd);
+				runFfmpeg("-i \"" + videoPath + "\" -i \"" + stem.getAbsolutePath() + "\" -map 0:v -map 1:a -c copy" + getVideoOptions() + " \""
+						+ output.getAbsolutePath() + "\"", Math.max(duration, audioEnd), "Merging video with audio tracks...", muxFrom, 100);
+			} finally {
+				cache.unpin(key);
+			}
+		} catch (IOException | RuntimeException e) {
+			output.delete();
+			throw e;
+		}
+	}
+
+	/**
+	 * Cancels the export, stopping ffmpeg if it is running
+	 */
+	public void cancel() {
+		cancelled = true;
+		SegmentRenderer mixing = renderer;
+		if (mixing != null) {
+			mixing.stop();
+		}
+		Process running = process;
+		if (running != null) {
+			running.destroy();
+		}
+	}
+
+	/**
+	 * Whether the export has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Mixes the audio of the video and every overlay into a stem and stores it in the StemCache.
+	 * The timeline is mixed in segments by the SegmentRenderer, so only the segments changed since
+	 * an earlier export are mixed again, and the segments are then encoded in one pass
+	 *
+	 * @param key - the key of the stem
+	 * @param duration - duration of the video in seconds
+	 * @return the stem in the cache
+	 */
+	private File mixStem(String key, double duration) throws IOException {
+		final List<MixSource> sources = getSources();
+		long totalFrames = PlaybackClock.millisToFrames(duration * 1000);
+		for (MixSource source : sources) {
+			totalFrames = Math.max(totalFrames, source.getEndFrame());
+		}
+
+		// Mixing the segments which are not in the cache yet on every core. The segments stay
+		// pinned in the cache until they have been encoded
+		renderer = new SegmentRenderer(sources, totalFrames);
+		if (cancelled) {
+			renderer.stop();
+		}
+		final int count = renderer.getSegmentCount();
+		StemCache cache = StemCache.getInstance();
+		File part = cache.getPartFile(key);
+		try {
+			report(0, "Mixing audio...");
+			final List<File> segments = renderer.renderAll(SegmentRenderer.getPool(), new SegmentRenderer.Listener() {
+				@Override
+				public void segmentMixed(int mixed, int toMix) {
+					report(mixed * (MIX_PERCENT / 2) / toMix, "Mixing audio segment " + mixed + " of " + toMix
+							+ " (" + (count - toMix) + " unchanged)...");
+				}
+			});
+
+			// Encoding the segments one after another into a temporary file which is only moved
+			// into the cache once complete
+			runFfmpeg("-f s16le -ar " + PcmDecoder.SAMPLE_RATE + " -ac " + PcmDecoder.CHANNELS + " -i pipe:0 -c:a aac -b:a 192k \""
+					+ part.getAbsolutePath() + "\"", PlaybackClock.framesToMillis(totalFrames) / 1000, "Encoding audio...",
+					MIX_PERCENT / 2, MIX_PERCENT, new Feeder() {
+				@Override
+				public void feed(OutputStream input) throws IOException {
+					for (File segment : segments) {
+						Files.copy(segment.toPath(), input);
+					}
+				}
+			});
+			return cache.store(key, part);
+		} finally {
+			part.delete();
+			renderer.release();
+			SegmentCache.getInstance().trim();
+		}
+	}
+
+	/**
+	 * Exports the project by mixing the audio in blocks of STREAM_BLOCK_FRAMES and writing them to
+	 * the stdin of the ffmpeg process muxing the output. ffmpeg copies the video and encodes the
+	 * raw PCM it reads, and the pipe only ever holds a few blocks, so the mix is paced by the encoder
+	 *
+	 * @param duration - duration of the video in seconds
+	 */
+	private void exportStreaming(double duration) throws IOException {
+		final List<StreamedMixSource> sources = getStreamedSources(duration);
+		try {
+			muxStreaming(duration, sources);
+		} finally {
+			for (StreamedMixSource source : sources) {
+				source.close();
+			}
+		}
+	}
+
+	/**
+	 * Mixes the streamed sources into the ffmpeg process muxing the output
+	 *
+	 * @param duration - duration of the video in seconds
+	 * @param sources - the sources of the mix
+	 */
+	private void muxStreaming(double duration, final List<StreamedMixSource> sources) throws IOException {
+		long videoFrames = PlaybackClock.millisToFrames(duration * 1000);
+		long frames = videoFrames;
+		for (MixSource source : sources) {
+			frames = Math.max(frames, source.getEndFrame());
+		}
+		final long totalFrames = frames;
+		durationSeconds = PlaybackClock.framesToMillis(totalFrames) / 1000;
+
+		runFfmpeg("-i \"" + videoPath + "\" -f s16le -ar " + PcmDecoder.SAMPLE_RATE + " -ac " + PcmDecoder.CHANNELS
+				+ " -i pipe:0 -map 0:v -map 1:a -c:v copy" + getVideoOptions() + " -c:a aac -b:a 192k \"" + output.getAbsolutePath() + "\"",
+				durationSeconds, "Mixing and merging audio tracks...", 0, 100, new Feeder() {
+			@Override
+			public void feed(OutputStream input) throws IOException {
+				int[] accumulator = new int[STREAM_BLOCK_FRAMES * PcmDecoder.CHANNELS];
+				byte[] block = new byte[STREAM_BLOCK_FRAMES * PcmDecoder.FRAME_SIZE];
+				List<MixSource> mixed = new ArrayList<MixSource>(sources);
+				try {
+					for (long done = 0; done < totalFrames && !cancelled; done += STREAM_BLOCK_FRAMES) {
+						int blockFrames = (int) Math.min(STREAM_BLOCK_FRAMES, totalFrames - done);
+
+						// Only the sources near the block are decoding, the rest are not started yet
+						// or already stopped
+						for (StreamedMixSource source : sources) {
+							source.prepare(done);
+						}
+						Mixdown.render(mixed, done, blockFrames, accumulator, block);
+						input.write(block, 0, blockFrames * PcmDecoder.FRAME_SIZE);
+					}
+				} catch (IllegalStateException e) {
+					// A source could not be read, which must not end up as a silently cut mix
+					throw new IOException(e.getMessage(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the ffmpeg options which encode the video with the effects applied, added after the
+	 * options copying the streams so that they replace the copy of the video only
+	 *
+	 * @return the options, or an empty string if the video is copied as it is
+	 */
+	private String getVideoOptions() {
+		String filter = effects.getFilter();
+		if (filter == null) {
+			return "";
+		}
+		return " -vf \"" + filter + "\" -c:v libx264 -preset veryfast -crf 18";
+	}
+
+	/**
+	 * Gets the decoded sources of the mix, i.e. the audio of the video if it has any and every
+	 * overlay. The audio already decoded by the previews is used when there is some
+	 */
+	private List<MixSource> getSources() throws IOException {
+		List<MixSource> sources = new ArrayList<>();
+		PcmCache pcmCache = PcmCache.getInstance();
+		if (videoHasAudio) {
+			report(0, "Decoding the audio of the video...");
+			sources.add(new MixSource(pcmCache.get(videoPath), CacheDirectory.fileKey(new File(videoPath)), 0, 1));
+		}
+		for (OverlayTrack track : tracks) {
+			checkCancelled();
+			report(0, "Processing " + new File(track.getFilePath()).getName() + "...");
+			MixSource source = new MixSource(pcmCache.get(track.getFilePath()), track);
+			audioEnd = Math.max(audioEnd, PlaybackClock.framesToMillis(source.getEndFrame()) / 1000);
+			sources.add(source);
+		}
+		return sources;
+	}
+
+	/**
+	 * Gets the sources of the mix for a streaming export, each of which is decoded into its own
+	 * pipe once the mix reaches it. The length of each overlay is probed without decoding it
+	 *
+	 * @param duration - duration of the video in seconds
+	 */
+	private List<StreamedMixSource> getStreamedSources(double duration) throws IOException {
+		List<StreamedMixSource> sources = new ArrayList<>();
+		if (videoHasAudio) {
+			sources.add(new StreamedMixSource(videoPath, CacheDirectory.fileKey(new File(videoPath)), 0, 1, duration));
+		}
+		for (OverlayTrack track : tracks) {
+			checkCancelled();
+			double trackDuration = MediaProbe.getInstance().getDurationSeconds(track.getFilePath());
+			StreamedMixSource source = new StreamedMixSource(track, trackDuration);
+			audioEnd = Math.max(audioEnd, PlaybackClock.framesToMillis(source.getEndFrame()) / 1000);
+			sources.add(source);
+		}
+		return sources;
+	}
+
+	/**
+	 * Runs ffmpeg, reporting the progress it writes on stdout until it exits
+	 *
+	 * @param arguments - the arguments after the global options
+	 * @param duration - length of the output in seconds, used for the percentage
+	 * @param task - description of what ffmpeg is doing
+	 * @param fromPercent - overall percentage when ffmpeg starts
+	 * @param toPercent - overall percentage when ffmpeg ends
+	 */
+	private void runFfmpeg(String arguments, double duration, String task, int fromPercent, int toPercent) throws IOException {
+		runFfmpeg(arguments, duration, task, fromPercent, toPercent, null);
+	}
+
+	/**
+	 * Runs ffmpeg with its stdin written by a feeder, reporting the progress it writes on stdout
+	 * until it exits
+	 *
+	 * @param arguments - the arguments after the global options
+	 * @param duration - length of the output in seconds, used for the percentage
+	 * @param task - description of what ffmpeg is doing
+	 * @param fromPercent - overall percentage when ffmpeg starts
+	 * @param toPercent - overall percentage when ffmpeg ends
+	 * @param feeder - writes the input of ffmpeg on its own thread, or null if ffmpeg reads no input
+	 */
+	private void runFfmpeg(String arguments, double duration, String task, int fromPercent, int toPercent,
+			Feeder feeder) throws IOException {
+		checkCancelled();
+		report(fromPercent, task);
+
+		// Asking ffmpeg for its progress on stdout instead of its usual statistics, and running it
+		// at a lower priority so that exporting does not starve the preview
+		String cmd = "exec nice -n 10 ffmpeg -y -progress pipe:1 -nostats " + arguments;
+		process = new ProcessBuilder("/bin/bash", "-c", cmd).start();
+		StringBuffer errors = drainErrors(process);
+		if (cancelled) {
+			process.destroy();
+		}
+		final IOException[] feedError = new IOException[1];
+		Thread feedThread = (feeder != null) ? startFeeding(feeder, process, feedError) : null;
+
+		// Reading the progress until ffmpeg exits, which is also when a cancelled export stops
+		FfmpegProgress progress = new FfmpegProgress(duration);
+		BufferedReader progressReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+		String line;
+		while ((line = progressReader.readLine()) != null) {
+			if (progress.parse(line)) {
+				report(fromPercent + progress.getPercent() * (toPercent - fromPercent) / 100, progress.getDescription(task));
+			}
+		}
+
+		// Waiting for ffmpeg to exit
+		int exitValue;
+		try {
+			exitValue = process.waitFor();
+			if (feedThread != null) {
+				feedThread.join();
+			}
+		} catch (InterruptedException e) {
+			cancel();
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		checkCancelled();
+		if (feedError[0] != null && exitValue == 0) {
+			throw feedError[0];
+		}
+		if (exitValue != 0) {
+			throw new IOException(errors.toString().trim());
+		}
+	}
+
+	/**
+	 * Interface used to write the input of ffmpeg
+	 */
+	private interface Feeder {
+		/**
+		 * Writes the whole input, the stream being closed afterwards
+		 *
+		 * @param input - the stdin of ffmpeg
+		 */
+		void feed(OutputStream input) throws IOException;
+	}
+
+	/**
+	 * Starts writing the input of ffmpeg on its own thread, so that its progress can be read at
+	 * the same time. If ffmpeg stops early the feeder fails, which is only reported if ffmpeg
+	 * itself did not fail
+	 *
+	 * @param feeder - writes the input
+	 * @param process - the ffmpeg process
+	 * @param error - set to the error of the feeder if it failed
+	 * @return the thread writing the input
+	 */
+	private Thread startFeeding(final Feeder feeder, final Process process, final IOException[] error) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				OutputStream input = new BufferedOutputStream(process.getOutputStream(), 1 << 16);
+				try {
+					feeder.feed(input);
+				} catch (IOException e) {
+					error[0] = e;
+				} finally {
+					try {
+						input.close();
+					} catch (IOException e) {
+						// ffmpeg has exited
+					}
+				}
+			}
+		}, "Export audio feed");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Throws a CancellationException if the export has been cancelled
+	 */
+	private void checkCancelled() {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+	}
+
+	/**
+	 * Informs the listener of the progress
+	 */
+	private void report(int percent, String description) {
+		if (listener != null) {
+			listener.progress(percent, description);
+		}
+	}
+
+	/**
+	 * Reads the error output of ffmpeg on its own thread so that it can never fill up and stall
+	 * ffmpeg, keeping the last lines to explain a failed export
+	 *
+	 * @param process - the ffmpeg process
+	 * @return the last lines written, filled in while ffmpeg runs
+	 */
+	private static StringBuffer drainErrors(Process process) {
+		final StringBuffer errors = new StringBuffer();
+		final BufferedReader errorReader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String line;
+					while ((line = errorReader.readLine()) != null) {
+						errors.append(line).append("\n");
+						if (errors.length() > 2000) {
+							errors.delete(0, errors.length() - 2000);
+						}
+					}
+				} catch (IOException e) {
+					// ffmpeg has exited
+				}
+			}
+		}, "Export error output");
+		thread.setDaemon(true);
+		thread.start();
+		return errors;
+	}
+}
@@ -0,0 +1,125 @@
+package vidivox.export;
+
+/**
+ * This class reads the machine readable progress that ffmpeg writes with "-progress pipe:1".
+ * ffmpeg writes a block of key=value lines every half a second, ending with a progress=continue
+ * or progress=end line, from which the position reached, the encoding speed and an estimate of
+ * the time remaining are worked out
+ */
+public class FfmpegProgress {
+
+	/**
+	 * Fields holding the latest progress
+	 */
+	private final double durationSeconds;		// Length of the output being encoded, 0 if unknown
+	private final long startNanos;				// System time the encoding started
+	private double outSeconds = 0;				// Position of the output encoded so far
+	private double speed = 0;					// Encoding speed as a multiple of real time
+	private boolean ended = false;				// Whether ffmpeg has reported the end
+
+	/**
+	 * Constructor for the progress of an encoding
+	 *
+	 * @param durationSeconds - length of the output being encoded, 0 if unknown
+	 */
+	public FfmpegProgress(double durationSeconds) {
+		this.durationSeconds = durationSeconds;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Reads one line of the progress output
+	 *
+	 * @param line - the line written by ffmpeg
+	 * @return true if the line ended a block, i.e. the progress should be shown
+	 */
+	public boolean parse(String line) {
+		int equals = line.indexOf('=');
+		if (equals < 0) {
+			return false;
+		}
+		String key = line.substring(0, equals).trim();
+		String value = line.substring(equals + 1).trim();
+		try {
+			// out_time_ms is in microseconds despite its name, and is written by every version
+			if (key.equals("out_time_ms") || key.equals("out_time_us")) {
+				outSeconds = Math.max(0, Long.parseLong(value) / 1000000.0);
+			} else if (key.equals("speed") && value.endsWith("x")) {
+				speed = Double.parseDouble(value.substring(0, value.length() - 1));
+			} else if (key.equals("progress")) {
+				ended = value.equals("end");
+				return true;
+			}
+		} catch (NumberFormatException e) {
+			// ffmpeg writes N/A before anything has been encoded
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the percentage of the output encoded, which only reaches 100 once ffmpeg has ended
+	 */
+	public int getPercent() {
+		if (ended) {
+			return 100;
+		}
+		if (durationSeconds <= 0) {
+			return 0;
+		}
+		return (int) Math.min(99, outSeconds * 100 / durationSeconds);
+	}
+
+	/**
+	 * Gets the encoding speed as a multiple of real time
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Gets an estimate of the time left, from the speed ffmpeg reports or if it has not reported
+	 * one yet from the time taken so far
+	 *
+	 * @return the seconds left, or -1 if it cannot be estimated yet
+	 */
+	public double getRemainingSeconds() {
+		if (ended) {
+			return 0;
+		}
+		if (durationSeconds <= 0 || outSeconds <= 0) {
+			return -1;
+		}
+		double remaining = Math.max(0, durationSeconds - outSeconds);
+		if (speed > 0) {
+			return remaining / speed;
+		}
+		double elapsed = (System.nanoTime() - startNanos) / 1000000000.0;
+		return remaining * elapsed / outSeconds;
+	}
+
+	/**
+	 * Whether ffmpeg has reported the end of the encoding
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * Gets a description of the progress to show to the user
+	 *
+	 * @param task - description of what ffmpeg is doing
+	 */
+	public String getDescription(String task) {
+		StringBuilder description = new StringBuilder(task + " " + getPercent() + "%");
+		if (speed > 0) {
+			description.append(String.format(" (%.1fx", speed));
+			double remaining = getRemainingSeconds();
+			if (remaining >= 0) {
+				long seconds = Math.round(remaining);
+				description.append(String.format(", %d:%02d left", seconds / 60, seconds % 60));
+			}
+			description.append(")");
+		}
+		return description.toString();
+	}
+}
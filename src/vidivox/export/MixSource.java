@@ -0,0 +1,99 @@
+package vidivox.export;
+import vidivox.audio.PcmAudio;
+import vidivox.audio.PlaybackClock;
+
+/**
+ * This class is one decoded audio source of an export mix, i.e. the audio of the video or an
+ * overlay, placed at an exact frame of the timeline with its gain
+ */
+public class MixSource {
+
+	/**
+	 * Fields describing the source
+	 */
+	private final PcmAudio audio;		// Decoded samples of the source
+	private final String key;			// Key which changes whenever the samples would change
+	private final long startFrame;		// Frame of the timeline the source starts at
+	private final float gain;			// Gain applied to the samples, 1 being unchanged
+
+	/**
+	 * Constructor for a source
+	 *
+	 * @param audio - decoded samples of the source
+	 * @param key - key which changes whenever the samples would change
+	 * @param startFrame - frame of the timeline the source starts at
+	 * @param gain - gain applied to the samples, 1 being unchanged
+	 */
+	public MixSource(PcmAudio audio, String key, long startFrame, float gain) {
+		this.audio = audio;
+		this.key = key;
+		this.startFrame = startFrame;
+		this.gain = gain;
+	}
+
+	/**
+	 * Constructor for the source of an overlay
+	 *
+	 * @param audio - decoded samples of the overlay
+	 * @param track - the overlay
+	 */
+	public MixSource(PcmAudio audio, OverlayTrack track) {
+		this(audio, track.getKey(), PlaybackClock.millisToFrames(track.getStartTime() * 1000), track.getVolume() / 100f);
+	}
+
+	/**
+	 * Gets the decoded samples of the source
+	 */
+	public PcmAudio getAudio() {
+		return audio;
+	}
+
+	/**
+	 * Gets a sample of the source
+	 *
+	 * @param frame - the frame of the source the sample is in
+	 * @param channel - the channel of the sample (0 left, 1 right)
+	 * @return the sample value
+	 */
+	public short getSample(long frame, int channel) {
+		return audio.getSample(frame, channel);
+	}
+
+	/**
+	 * Gets the key which changes whenever the samples would change
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Gets the frame of the timeline the source starts at
+	 */
+	public long getStartFrame() {
+		return startFrame;
+	}
+
+	/**
+	 * Gets the frame of the timeline after the last frame of the source
+	 */
+	public long getEndFrame() {
+		return startFrame + audio.getFrameCount();
+	}
+
+	/**
+	 * Gets the gain applied to the samples
+	 */
+	public float getGain() {
+		return gain;
+	}
+
+	/**
+	 * Whether the source can be heard anywhere in a range of the timeline
+	 *
+	 * @param fromFrame - first frame of the range
+	 * @param frames - number of frames in the range
+	 */
+	public boolean overlaps(long fromFrame, long frames) {
+		return startFrame < fromFrame + frames && getEndFrame() > fromFrame;
+	}
+}
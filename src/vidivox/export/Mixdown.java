@@ -0,0 +1,50 @@
+package vidivox.export;
+import java.util.Arrays;
+import java.util.List;
+
+import vidivox.audio.PcmDecoder;
+
+/**
+ * This class mixes the sources of an export into blocks of PCM in the format of the PcmDecoder.
+ * Every source is added at the exact frame it starts at, so a block of the timeline always mixes
+ * to the same samples no matter how the timeline is split into blocks
+ */
+public class Mixdown {
+
+	/**
+	 * Mixes a range of the timeline
+	 *
+	 * @param sources - the sources to mix
+	 * @param fromFrame - first frame of the timeline to mix
+	 * @param frames - number of frames to mix
+	 * @param accumulator - buffer of at least frames * CHANNELS sums, reused between calls
+	 * @param output - buffer of at least frames * FRAME_SIZE bytes the mix is written to
+	 */
+	public static void render(List<MixSource> sources, long fromFrame, int frames, int[] accumulator, byte[] output) {
+		int samples = frames * PcmDecoder.CHANNELS;
+		Arrays.fill(accumulator, 0, samples, 0);
+
+		// Adding the part of every source which falls inside the range
+		for (MixSource source : sources) {
+			if (!source.overlaps(fromFrame, frames)) {
+				continue;
+			}
+			int from = (int) Math.max(0, source.getStartFrame() - fromFrame);
+			int to = (int) Math.min(frames, source.getEndFrame() - fromFrame);
+			long sourceFrame = fromFrame + from - source.getStartFrame();
+			float gain = source.getGain();
+			for (int i = from; i < to; i++, sourceFrame++) {
+				for (int channel = 0; channel < PcmDecoder.CHANNELS; channel++) {
+					accumulator[i * PcmDecoder.CHANNELS + channel] += (int) (source.getSample(sourceFrame, channel) * gain);
+				}
+			}
+		}
+
+		// Clipping the sums and converting them to little endian bytes
+		for (int i = 0; i < samples; i++) {
+			int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, accumulator[i]));
+			output[2 * i] = (byte) sample;
+			output[2 * i + 1] = (byte) (sample >> 8);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package vidivox.export;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import vidivox.audio.AudioOverlay;
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class is a snapshot of an audio overlay taken when an export starts, holding only what
+ * the export needs (the audio file, start time and volume). The export runs in the background
+ * on these snapshots, so the user can keep editing the overlays while it runs
+ */
+public class OverlayTrack {
+
+	/**
+	 * Fields describing the overlay
+	 */
+	private final String filePath;		// Path to the audio file of the overlay
+	private final double startTime;		// Time of the video the overlay starts at in seconds
+	private final int volume;			// Volume of the overlay (0 - 100)
+
+	/**
+	 * Constructor for a track
+	 *
+	 * @param filePath - path to the audio file of the overlay
+	 * @param startTime - time of the video the overlay starts at in seconds
+	 * @param volume - volume of the overlay (0 - 100)
+	 */
+	public OverlayTrack(String filePath, double startTime, int volume) {
+		this.filePath = filePath;
+		this.startTime = startTime;
+		this.volume = volume;
+	}
+
+	/**
+	 * Takes a snapshot of every overlay that has an audio file
+	 *
+	 * @param overlays - the overlays of the project
+	 * @return the tracks to export
+	 */
+	public static List<OverlayTrack> of(List<AudioOverlay> overlays) {
+		List<OverlayTrack> tracks = new ArrayList<>();
+		for (AudioOverlay overlay : overlays) {
+			String filePath = overlay.getFilePath();
+			if (filePath != null && !filePath.isEmpty()) {
+				tracks.add(new OverlayTrack(filePath, overlay.getStartTime(), overlay.getVolume()));
+			}
+		}
+		return tracks;
+	}
+
+	/**
+	 * Gets the path to the audio file of the overlay
+	 */
+	public String getFilePath() {
+		return filePath;
+	}
+
+	/**
+	 * Gets the time of the video the overlay starts at in seconds
+	 */
+	public double getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Gets the volume of the overlay (0 - 100)
+	 */
+	public int getVolume() {
+		return volume;
+	}
+
+	/**
+	 * Gets a key which changes whenever the audio of this track would change, i.e. when its
+	 * file is edited or it is moved or made louder or quieter
+	 */
+	public String getKey() {
+		return CacheDirectory.hash(CacheDirectory.fileKey(new File(filePath)), Double.toString(startTime),
+				Integer.toString(volume));
+	}
+}
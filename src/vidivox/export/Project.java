@@ -0,0 +1,162 @@
+package vidivox.export;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import vidivox.speech.SpeechSynthesizer;
+
+/**
+ * This class reads a saved .vvproject file without creating any of the Swing overlays. The file
+ * holds the path to the video on its first line and then one overlay per line in the format
+ * written by AudioOverlay.toString():
+ * F, path, start time, volume for an audio file and C, position, text, start time, volume for
+ * a commentary, separated by tabs
+ */
+public class Project {
+
+	/**
+	 * This class is a commentary of the project, which still has to be synthesized
+	 */
+	public static class Commentary {
+
+		/**
+		 * Fields describing the commentary
+		 */
+		private final String text;			// Text to be spoken
+		private final double startTime;		// Time of the video the commentary starts at in seconds
+		private final int volume;			// Volume of the commentary (0 - 100)
+
+		Commentary(String text, double startTime, int volume) {
+			this.text = text;
+			this.startTime = startTime;
+			this.volume = volume;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public double getStartTime() {
+			return startTime;
+		}
+
+		public int getVolume() {
+			return volume;
+		}
+	}
+
+	/**
+	 * Fields describing the project
+	 */
+	private final String videoPath;									// Path to the video, null if none was saved
+	private final List<OverlayTrack> files = new ArrayList<>();		// Audio files overlaid on the video
+	private final List<Commentary> commentaries = new ArrayList<>();	// Commentaries overlaid on the video
+
+	/**
+	 * Constructor for a project with no overlays yet
+	 *
+	 * @param videoPath - path to the video, null if none was saved
+	 */
+	private Project(String videoPath) {
+		this.videoPath = videoPath;
+	}
+
+	/**
+	 * Reads a project file
+	 *
+	 * @param file - the .vvproject file
+	 * @return the project
+	 * @throws IOException if the file could not be read or is not a project file
+	 */
+	public static Project load(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line = reader.readLine();
+			if (line == null) {
+				throw new IOException("Empty project file " + file);
+			}
+			Project project = new Project(line.isEmpty() ? null : line);
+
+			// Reading the overlays in the same format as AudioOverlay.fromString()
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] fields = line.split("\\t");
+				try {
+					if (line.startsWith("F")) {
+						project.files.add(new OverlayTrack(fields[1], Float.parseFloat(fields[2]), Integer.parseInt(fields[3])));
+					} else if (line.startsWith("C")) {
+						project.commentaries.add(new Commentary(fields[2], Float.parseFloat(fields[3]), Integer.parseInt(fields[4])));
+					} else {
+						throw new IOException("Unknown overlay on line " + lineNumber + " of " + file);
+					}
+				} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+					throw new IOException("Invalid overlay on line " + lineNumber + " of " + file);
+				}
+			}
+			return project;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Synthesizes the commentaries of the project, which are saved without their voice so use
+	 * the default one
+	 *
+	 * @param listener - listener informed before each commentary is synthesized, or null
+	 * @return every overlay of the project, the commentaries being their synthesized wav files
+	 * @throws IOException if a commentary could not be synthesized
+	 * @throws InterruptedException if interrupted while synthesizing
+	 */
+	public List<OverlayTrack> synthesize(Exporter.Listener listener) throws IOException, InterruptedException {
+		List<OverlayTrack> tracks = new ArrayList<>(files);
+		for (int i = 0; i < commentaries.size(); i++) {
+			Commentary commentary = commentaries.get(i);
+			if (listener != null) {
+				listener.progress(0, "Synthesizing commentary " + (i + 1) + " of " + commentaries.size());
+			}
+			if (commentary.getText().isEmpty()) {
+				continue;
+			}
+			File workFile = File.createTempFile("commentary", ".wav");
+			File wavFile = new SpeechSynthesizer(commentary.getText(), "Robotic", "Normal").synthesize(workFile);
+			workFile.delete();
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (wavFile == null) {
+				throw new IOException("Could not synthesize commentary: " + commentary.getText());
+			}
+			tracks.add(new OverlayTrack(wavFile.getAbsolutePath(), commentary.getStartTime(), commentary.getVolume()));
+		}
+		return tracks;
+	}
+
+	/**
+	 * Gets the path to the video, null if none was saved
+	 */
+	public String getVideoPath() {
+		return videoPath;
+	}
+
+	/**
+	 * Gets the audio files overlaid on the video
+	 */
+	public List<OverlayTrack> getFiles() {
+		return files;
+	}
+
+	/**
+	 * Gets the commentaries overlaid on the video
+	 */
+	public List<Commentary> getCommentaries() {
+		return commentaries;
+	}
+}
@@ -0,0 +1,108 @@
+package vidivox.export;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class is a persistent cache of mixed segments of export timelines, stored as raw PCM in
+ * ~/.vidivox/cache/segments under the key given by the SegmentRenderer. The least recently used
+ * segments are evicted once the cache grows past its size budget
+ * (-Dvidivox.segmentCacheMegabytes, 2048MB by default, enough for a couple of hour long projects)
+ */
+public class SegmentCache {
+
+	/**
+	 * The single cache shared by the whole application
+	 */
+	private static final SegmentCache instance = new SegmentCache();
+
+	/**
+	 * Fields of the cache
+	 */
+	private final File directory = CacheDirectory.get("segments");							// Directory of the cached segments
+	private final long maxBytes = CacheDirectory.budget("vidivox.segmentCacheMegabytes", 2048);	// Size budget
+
+	/**
+	 * Gets the cache shared by the application
+	 */
+	public static SegmentCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the cached segment for a key
+	 *
+	 * @param key - the key of the segment
+	 * @return the cached segment, or null if it has not been mixed before
+	 */
+	public File lookup(String key) {
+		File cached = getFile(key);
+		if (cached.isFile()) {
+			CacheDirectory.touch(cached);
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * Pins the segment for a key so it is not evicted while an export still needs it, which is
+	 * done before looking it up
+	 *
+	 * @param key - the key of the segment
+	 */
+	public void pin(String key) {
+		CacheDirectory.pin(getFile(key));
+	}
+
+	/**
+	 * Releases the pin on the segment for a key
+	 *
+	 * @param key - the key of the segment
+	 */
+	public void unpin(String key) {
+		CacheDirectory.unpin(getFile(key));
+	}
+
+	/**
+	 * Gets a temporary file in the cache directory to mix a segment into, so that storing it is
+	 * only a rename
+	 *
+	 * @param key - the key of the segment
+	 */
+	public File getPartFile(String key) {
+		return new File(directory, key + "." + Thread.currentThread().getId() + ".part");
+	}
+
+	/**
+	 * Moves a freshly mixed segment into the cache
+	 *
+	 * @param key - the key of the segment
+	 * @param mixed - the mixed segment
+	 * @return the segment in the cache
+	 * @throws IOException if the segment could not be moved
+	 */
+	public File store(String key, File mixed) throws IOException {
+		File cached = getFile(key);
+		Files.move(mixed.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		CacheDirectory.touch(cached);
+		return cached;
+	}
+
+	/**
+	 * Evicts the least recently used segments if the cache is over its budget. Segments which
+	 * an export running at the same time has pinned are kept
+	 */
+	public void trim() {
+		CacheDirectory.trim(directory, maxBytes);
+	}
+
+	/**
+	 * Gets the file of the segment for a key
+	 */
+	private File getFile(String key) {
+		return new File(directory, key + ".pcm");
+	}
+}
@@ -0,0 +1,292 @@
+package vidivox.export;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import vidivox.audio.PcmDecoder;
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class splits the timeline of an export into segments of a fixed number of frames and
+ * mixes each one into the SegmentCache. A segment is keyed by a hash of its position and of the
+ * sources which can be heard in it, so after an edit only the segments touched by the changed
+ * overlays have to be mixed again and every other segment is taken from the cache. The segments
+ * which have to be mixed are mixed in parallel, one per core
+ */
+public class SegmentRenderer {
+
+	/**
+	 * Version of the segments, to be changed whenever the way they are mixed changes so that
+	 * segments mixed by an older version are not used
+	 */
+	public static final String SEGMENT_VERSION = "mixdown-1";
+
+	/**
+	 * Length of a segment (10 seconds)
+	 */
+	public static final int SEGMENT_FRAMES = 10 * PcmDecoder.SAMPLE_RATE;
+
+	/**
+	 * Frames mixed at a time while writing a segment
+	 */
+	private static final int BLOCK_FRAMES = 8192;
+
+	/**
+	 * Interface used to report the segments mixed
+	 */
+	public interface Listener {
+		/**
+		 * Called from the mixing threads whenever a segment has been mixed
+		 *
+		 * @param mixed - number of segments mixed so far
+		 * @param toMix - number of segments which were not in the cache
+		 */
+		void segmentMixed(int mixed, int toMix);
+	}
+
+	/**
+	 * Pool shared by every export to mix segments on, created when first needed
+	 */
+	private static ForkJoinPool pool;
+
+	/**
+	 * Fields describing the timeline
+	 */
+	private final List<MixSource> sources;		// Sources mixed into the timeline
+	private final long totalFrames;				// Length of the timeline
+	private volatile boolean stopped = false;	// Whether mixing should stop, e.g. on cancel
+	private boolean pinned = false;				// Whether the segments are pinned in the SegmentCache
+
+	/**
+	 * Constructor for the renderer of a timeline
+	 *
+	 * @param sources - the sources mixed into the timeline
+	 * @param totalFrames - length of the timeline
+	 */
+	public SegmentRenderer(List<MixSource> sources, long totalFrames) {
+		this.sources = sources;
+		this.totalFrames = totalFrames;
+	}
+
+	/**
+	 * Gets the number of segments of the timeline
+	 */
+	public int getSegmentCount() {
+		return (int) ((totalFrames + SEGMENT_FRAMES - 1) / SEGMENT_FRAMES);
+	}
+
+	/**
+	 * Gets the first frame of a segment
+	 */
+	public long getSegmentStart(int index) {
+		return (long) index * SEGMENT_FRAMES;
+	}
+
+	/**
+	 * Gets the number of frames of a segment, the last one being shorter
+	 */
+	public int getSegmentLength(int index) {
+		return (int) Math.min(SEGMENT_FRAMES, totalFrames - getSegmentStart(index));
+	}
+
+	/**
+	 * Gets the key of a segment, made from its position and every source which can be heard in it
+	 *
+	 * @param index - index of the segment
+	 */
+	public String getKey(int index) {
+		long start = getSegmentStart(index);
+		int length = getSegmentLength(index);
+		List<String> parts = new ArrayList<>();
+		parts.add(SEGMENT_VERSION);
+		parts.add(start + ":" + length);
+		for (MixSource source : sources) {
+			if (source.overlaps(start, length)) {
+				parts.add(source.getKey() + ":" + source.getStartFrame() + ":" + source.getGain());
+			}
+		}
+		return CacheDirectory.hash(parts.toArray(new String[parts.size()]));
+	}
+
+	/**
+	 * Gets a segment from the cache
+	 *
+	 * @param index - index of the segment
+	 * @return the mixed segment, or null if it has to be mixed
+	 */
+	public File getCached(int index) {
+		return SegmentCache.getInstance().lookup(getKey(index));
+	}
+
+	/**
+	 * Gets the pool segments are mixed on, with one thread per core unless set otherwise with
+	 * -Dvidivox.mixThreads
+	 */
+	public static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(Integer.getInteger("vidivox.mixThreads", Runtime.getRuntime().availableProcessors()));
+		}
+		return pool;
+	}
+
+	/**
+	 * Gets every segment of the timeline in order, mixing the ones which are not in the cache in
+	 * parallel on a fork/join pool. Segments start at exact frames, so the segments mixed in
+	 * parallel join up without a gap or overlap
+	 *
+	 * @param pool - the pool to mix on
+	 * @param listener - listener informed of the segments mixed, or null
+	 * @return the mixed segments, to be played one after another, which stay pinned in the
+	 * SegmentCache until release is called
+	 * @throws IOException if a segment could not be written
+	 * @throws CancellationException if mixing was stopped
+	 */
+	public List<File> renderAll(ForkJoinPool pool, Listener listener) throws IOException {
+		File[] segments = new File[getSegmentCount()];
+
+		// Pinning every segment so that none is evicted by another export before it is read,
+		// until release is called
+		if (!pinned) {
+			pinned = true;
+			for (int i = 0; i < segments.length; i++) {
+				SegmentCache.getInstance().pin(getKey(i));
+			}
+		}
+
+		List<Integer> toMix = new ArrayList<>();
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = getCached(i);
+			if (segments[i] == null) {
+				toMix.add(i);
+			}
+		}
+
+		// Splitting the segments to mix between the threads of the pool
+		if (!toMix.isEmpty()) {
+			try {
+				pool.invoke(new RenderTask(toMix, 0, toMix.size(), segments, new AtomicInteger(), listener));
+			} catch (RuntimeException e) {
+				// The pool may wrap the exception of the task again, so the whole chain is searched
+				for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+				}
+				throw e;
+			}
+		}
+		return Arrays.asList(segments);
+	}
+
+	/**
+	 * Releases the segments pinned by renderAll, once they have been read
+	 */
+	public void release() {
+		if (pinned) {
+			pinned = false;
+			for (int i = 0; i < getSegmentCount(); i++) {
+				SegmentCache.getInstance().unpin(getKey(i));
+			}
+		}
+	}
+
+	/**
+	 * Stops any mixing in progress, which then fails with a CancellationException
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * Mixes a segment and stores it in the cache
+	 *
+	 * @param index - index of the segment
+	 * @return the mixed segment
+	 * @throws IOException if the segment could not be written
+	 */
+	public File render(int index) throws IOException {
+		String key = getKey(index);
+		SegmentCache cache = SegmentCache.getInstance();
+		File part = cache.getPartFile(key);
+		long start = getSegmentStart(index);
+		int length = getSegmentLength(index);
+
+		// Mixing a block at a time so the memory used does not depend on the segment length
+		int[] accumulator = new int[BLOCK_FRAMES * PcmDecoder.CHANNELS];
+		byte[] block = new byte[BLOCK_FRAMES * PcmDecoder.FRAME_SIZE];
+		try {
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(part));
+			try {
+				for (int done = 0; done < length; done += BLOCK_FRAMES) {
+					int frames = Math.min(BLOCK_FRAMES, length - done);
+					Mixdown.render(sources, start + done, frames, accumulator, block);
+					output.write(block, 0, frames * PcmDecoder.FRAME_SIZE);
+				}
+			} finally {
+				output.close();
+			}
+			return cache.store(key, part);
+		} finally {
+			part.delete();
+		}
+	}
+
+	/**
+	 * This class mixes a range of the segments to mix, splitting it in half between two tasks
+	 * until there is one segment left to mix
+	 */
+	@SuppressWarnings("serial")
+	private class RenderTask extends RecursiveAction {
+
+		/**
+		 * Fields of the task
+		 */
+		private final List<Integer> toMix;			// Indexes of every segment to mix
+		private final int from;						// First index of toMix mixed by this task
+		private final int to;						// Index of toMix after the last one mixed by this task
+		private final File[] segments;				// Mixed segments, filled in by the tasks
+		private final AtomicInteger mixed;			// Number of segments mixed by every task
+		private final Listener listener;			// Listener informed of the segments mixed, or null
+
+		RenderTask(List<Integer> toMix, int from, int to, File[] segments, AtomicInteger mixed, Listener listener) {
+			this.toMix = toMix;
+			this.from = from;
+			this.to = to;
+			this.segments = segments;
+			this.mixed = mixed;
+			this.listener = listener;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RenderTask(toMix, from, middle, segments, mixed, listener),
+						new RenderTask(toMix, middle, to, segments, mixed, listener));
+				return;
+			}
+			if (stopped) {
+				throw new CancellationException();
+			}
+			int index = toMix.get(from);
+			try {
+				segments[index] = render(index);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			int count = mixed.incrementAndGet();
+			if (listener != null) {
+				listener.segmentMixed(count, toMix.size());
+			}
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package vidivox.export;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class is a persistent cache of premixed audio stems. A stem is the complete audio track
+ * of an export, i.e. the audio of the video mixed with every overlay and encoded, and is stored
+ * in ~/.vidivox/cache/stems under a hash of the video's audio and of every overlay (its file,
+ * start time and volume). Exporting a project whose audio has not changed then only has to
+ * copy the stem next to the video. The least recently used stems are evicted once the cache
+ * grows past its size budget (-Dvidivox.stemCacheMegabytes, 512MB by default)
+ */
+public class StemCache {
+
+	/**
+	 * Version of the stems, to be changed whenever the way they are mixed or encoded changes so
+	 * that stems made by an older version are not used
+	 */
+	public static final String STEM_VERSION = "segments-aac-1";
+
+	/**
+	 * The single cache shared by the whole application
+	 */
+	private static final StemCache instance = new StemCache();
+
+	/**
+	 * Fields of the cache
+	 */
+	private final File directory = CacheDirectory.get("stems");							// Directory of the cached stems
+	private final long maxBytes = CacheDirectory.budget("vidivox.stemCacheMegabytes", 512);	// Size budget
+
+	/**
+	 * Gets the cache shared by the application
+	 */
+	public static StemCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the key of the stem of a project
+	 *
+	 * @param videoPath - path to the video whose audio is mixed in
+	 * @param tracks - the overlays mixed in
+	 * @return the key of the stem
+	 */
+	public String key(String videoPath, List<OverlayTrack> tracks) {
+		String[] parts = new String[tracks.size() + 2];
+		parts[0] = STEM_VERSION;
+		parts[1] = CacheDirectory.fileKey(new File(videoPath));
+		for (int i = 0; i < tracks.size(); i++) {
+			parts[i + 2] = tracks.get(i).getKey();
+		}
+		return CacheDirectory.hash(parts);
+	}
+
+	/**
+	 * Gets the cached stem for a key
+	 *
+	 * @param key - the key of the stem
+	 * @return the cached stem, or null if it has not been mixed before
+	 */
+	public File lookup(String key) {
+		File cached = getFile(key);
+		if (cached.isFile() && cached.length() > 0) {
+			CacheDirectory.touch(cached);
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * Pins the stem for a key so it is not evicted while an export still needs it, which is done
+	 * before looking it up
+	 *
+	 * @param key - the key of the stem
+	 */
+	public void pin(String key) {
+		CacheDirectory.pin(getFile(key));
+	}
+
+	/**
+	 * Releases the pin on the stem for a key
+	 *
+	 * @param key - the key of the stem
+	 */
+	public void unpin(String key) {
+		CacheDirectory.unpin(getFile(key));
+	}
+
+	/**
+	 * Gets a temporary file in the cache directory to mix a stem into, so that storing it is
+	 * only a rename. The file is unique to the thread mixing it, so exports of the same project
+	 * running at once never write to (or delete) each other's file
+	 *
+	 * @param key - the key of the stem
+	 */
+	public File getPartFile(String key) {
+		return new File(directory, key + "." + Thread.currentThread().getId() + ".part.m4a");
+	}
+
+	/**
+	 * Moves a freshly mixed stem into the cache
+	 *
+	 * @param key - the key of the stem
+	 * @param mixed - the mixed stem
+	 * @return the stem in the cache
+	 * @throws IOException if the stem could not be moved
+	 */
+	public File store(String key, File mixed) throws IOException {
+		File cached = getFile(key);
+		Files.move(mixed.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		CacheDirectory.touch(cached);
+		CacheDirectory.trim(directory, maxBytes);
+		return cached;
+	}
+
+	/**
+	 * Gets the file of the stem for a key
+	 */
+	private File getFile(String key) {
+		return new File(directory, key + ".m4a");
+	}
+}
@@ -0,0 +1,187 @@
+package vidivox.export;
+import java.io.IOException;
+import java.io.InputStream;
+
+import vidivox.audio.PcmDecoder;
+import vidivox.audio.PlaybackClock;
+
+/**
+ * This class is a source of a streaming export which is decoded while it is mixed instead of
+ * through the PcmCache. Its own ffmpeg process writes the samples to a pipe, and only a window of
+ * WINDOW_FRAMES frames is held at a time, so nothing is written to disk and the memory used does
+ * not depend on the length of the source. The timeline is mixed from start to end, so the samples
+ * are only ever asked for in order and the window simply moves forward through the stream. The
+ * length of the source is its probed duration, and a stream which ends early is padded with silence.
+ *
+ * ffmpeg is only started once the mix comes within a window of the start of the source, and is
+ * stopped as soon as the mix passes its end, so a project with many overlays only ever has the
+ * decoders of the overlays being heard running rather than one for each overlay
+ */
+public class StreamedMixSource extends MixSource {
+
+	/**
+	 * Frames held at a time (about 370ms)
+	 */
+	private static final int WINDOW_FRAMES = 16384;
+
+	/**
+	 * Fields describing the stream
+	 */
+	private final String filePath;				// Path to the audio file or video decoded
+	private Process process;					// ffmpeg decoding the source, null until started
+	private InputStream input;					// Samples written by ffmpeg
+	private final long frameCount;				// Length of the source in frames
+	private final short[] window = new short[WINDOW_FRAMES * PcmDecoder.CHANNELS];	// Samples of the window
+	private final byte[] bytes = new byte[WINDOW_FRAMES * PcmDecoder.FRAME_SIZE];		// Bytes read into the window
+	private long windowStart = 0;				// Frame of the source the window starts at
+	private int windowFrames = 0;				// Frames held in the window
+	private boolean ended = false;				// Whether ffmpeg has written every sample
+	private boolean closed = false;				// Whether the source is no longer needed
+
+	/**
+	 * Constructor for a source which is decoded once the mix reaches it (see prepare)
+	 *
+	 * @param filePath - path to the audio file or video
+	 * @param key - key which changes whenever the samples would change
+	 * @param startFrame - frame of the timeline the source starts at
+	 * @param gain - gain applied to the samples, 1 being unchanged
+	 * @param durationSeconds - length of the source
+	 */
+	public StreamedMixSource(String filePath, String key, long startFrame, float gain, double durationSeconds) {
+		super(null, key, startFrame, gain);
+		this.filePath = filePath;
+		this.frameCount = PlaybackClock.millisToFrames(durationSeconds * 1000);
+	}
+
+	/**
+	 * Constructor for the source of an overlay
+	 *
+	 * @param track - the overlay
+	 * @param durationSeconds - length of the overlay
+	 */
+	public StreamedMixSource(OverlayTrack track, double durationSeconds) {
+		this(track.getFilePath(), track.getKey(), PlaybackClock.millisToFrames(track.getStartTime() * 1000),
+				track.getVolume() / 100f, durationSeconds);
+	}
+
+	/**
+	 * Starts ffmpeg once the mix is within a window of the start of the source, and stops it once
+	 * the mix is past its end. Called with every block of the mix before it is rendered
+	 *
+	 * @param timelineFrame - frame of the timeline the next block starts at
+	 * @throws IOException if ffmpeg could not be started
+	 */
+	public void prepare(long timelineFrame) throws IOException {
+		if (timelineFrame >= getEndFrame()) {
+			close();
+		} else if (process == null && !closed && timelineFrame + WINDOW_FRAMES >= getStartFrame()) {
+			start();
+		}
+	}
+
+	/**
+	 * Gets a sample, moving the window forward through the stream when the frame is past it
+	 *
+	 * @throws IllegalStateException if the stream could not be read
+	 */
+	@Override
+	public short getSample(long frame, int channel) {
+		// Starting ffmpeg here if the source was not prepared before being mixed
+		if (process == null && !closed) {
+			try {
+				start();
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not start decoding " + filePath, e);
+			}
+		}
+		while (frame >= windowStart + windowFrames) {
+			if (!readWindow(frame)) {
+				return 0;
+			}
+		}
+		if (frame < windowStart) {
+			// Already streamed past, which the order of the mix never asks for
+			return 0;
+		}
+		return window[(int) (frame - windowStart) * PcmDecoder.CHANNELS + channel];
+	}
+
+	@Override
+	public long getEndFrame() {
+		return getStartFrame() + frameCount;
+	}
+
+	/**
+	 * Stops ffmpeg, called once the export no longer needs the source
+	 */
+	public void close() {
+		closed = true;
+		ended = true;
+		if (process != null) {
+			process.destroy();
+			process = null;
+		}
+	}
+
+	/**
+	 * Starts ffmpeg decoding the source into a pipe
+	 *
+	 * @throws IOException if ffmpeg could not be started
+	 */
+	private void start() throws IOException {
+		process = new ProcessBuilder("/bin/bash", "-c", "exec ffmpeg -v quiet -i \"" + filePath + "\" -vn -sn -map 0:a:0 -f s16le -acodec pcm_s16le -ac "
+				+ PcmDecoder.CHANNELS + " -ar " + PcmDecoder.SAMPLE_RATE + " pipe:1").start();
+		process.getOutputStream().close();
+		input = process.getInputStream();
+	}
+
+	/**
+	 * Reads the next window of the stream
+	 *
+	 * @param frame - the frame wanted, used to skip the stream forward if it is further on
+	 * @return false if the stream has ended
+	 */
+	private boolean readWindow(long frame) {
+		if (ended) {
+			return false;
+		}
+		windowStart += windowFrames;
+		windowFrames = 0;
+		try {
+			// Skipping any whole windows before the frame
+			while (frame >= windowStart + WINDOW_FRAMES) {
+				if (read() < WINDOW_FRAMES) {
+					return false;
+				}
+				windowStart += WINDOW_FRAMES;
+			}
+			windowFrames = read();
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read the decoded audio", e);
+		}
+
+		// Converting the little endian bytes into samples
+		for (int i = 0; i < windowFrames * PcmDecoder.CHANNELS; i++) {
+			window[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+		}
+		return windowFrames > 0;
+	}
+
+	/**
+	 * Reads up to a window of whole frames from the stream into the bytes
+	 *
+	 * @return the number of frames read, less than a window only once the stream has ended
+	 */
+	private int read() throws IOException {
+		int total = 0;
+		while (total < bytes.length) {
+			int count = input.read(bytes, total, bytes.length - total);
+			if (count < 0) {
+				ended = true;
+				break;
+			}
+			total += count;
+		}
+		return total / PcmDecoder.FRAME_SIZE;
+	}
+}
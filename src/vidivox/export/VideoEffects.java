@@ -0,0 +1,90 @@
+package vidivox.export;
+import java.util.Locale;
+
+/**
+ * This class holds the video effects set in the VideoEffectsPanel, in the same units as the
+ * vlcj preview, and turns them into the ffmpeg filter graph which bakes them into an export.
+ * Effects which are all at their defaults need no filter, so the video can still be copied
+ * without encoding it again
+ */
+public class VideoEffects {
+
+	/**
+	 * The effects of a video which has not been adjusted
+	 */
+	public static final VideoEffects NONE = new VideoEffects(1, 0, 1, 1, 1);
+
+	/**
+	 * Fields holding the effects, in the units used by vlcj
+	 */
+	private final float brightness;		// Brightness, 1 being unchanged
+	private final int hue;				// Hue rotation in degrees
+	private final float contrast;		// Contrast, 1 being unchanged
+	private final float saturation;		// Saturation, 1 being unchanged
+	private final float gamma;			// Gamma, 1 being unchanged
+
+	/**
+	 * Constructor for a set of effects
+	 *
+	 * @param brightness - brightness, 1 being unchanged
+	 * @param hue - hue rotation in degrees
+	 * @param contrast - contrast, 1 being unchanged
+	 * @param saturation - saturation, 1 being unchanged
+	 * @param gamma - gamma, 1 being unchanged
+	 */
+	public VideoEffects(float brightness, int hue, float contrast, float saturation, float gamma) {
+		this.brightness = brightness;
+		this.hue = hue;
+		this.contrast = contrast;
+		this.saturation = saturation;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Whether every effect is at its default, in which case the video is left as it is
+	 */
+	public boolean isDefault() {
+		return getFilter() == null;
+	}
+
+	/**
+	 * Gets the ffmpeg filter graph applying the effects, only adding the filters that change
+	 * something. The eq filter does brightness, contrast, saturation and gamma in one pass and
+	 * the hue filter rotates the hue
+	 *
+	 * @return the filter graph, or null if no effect has been changed
+	 */
+	public String getFilter() {
+		StringBuilder eq = new StringBuilder();
+		// vlc scales the brightness while eq adds to it, so 1 in vlc is 0 in eq
+		appendOption(eq, "brightness", brightness - 1, 0);
+		appendOption(eq, "contrast", contrast, 1);
+		appendOption(eq, "saturation", saturation, 1);
+		appendOption(eq, "gamma", Math.max(0.1f, gamma), 1);
+
+		StringBuilder filter = new StringBuilder();
+		if (eq.length() > 0) {
+			filter.append("eq=").append(eq);
+		}
+		if (hue % 360 != 0) {
+			if (filter.length() > 0) {
+				filter.append(",");
+			}
+			filter.append("hue=h=").append(hue);
+		}
+		return (filter.length() > 0) ? filter.toString() : null;
+	}
+
+	/**
+	 * Adds an option of the eq filter if its value is not the default
+	 */
+	private static void appendOption(StringBuilder eq, String name, float value, float defaultValue) {
+		if (Math.abs(value - defaultValue) < 0.005f) {
+			return;
+		}
+		if (eq.length() > 0) {
+			eq.append(":");
+		}
+		eq.append(name).append("=").append(String.format(Locale.ROOT, "%.2f", value));
+	}
+}
@@ -0,0 +1,262 @@
+package vidivox.media;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class reads the duration and format of WAV and MP3 files straight from their headers,
+ * which takes well under a millisecond where starting ffprobe takes 100ms or more. WAV files
+ * are read from their fmt and data chunks. MP3 files are read from the Xing/Info or VBRI header
+ * of their first frame when they have one, and otherwise by walking the header of every frame,
+ * which is still exact for variable bit rate files. Files that cannot be read this way are left
+ * to ffprobe
+ */
+public class AudioHeaders {
+
+	/**
+	 * Bit rates of MPEG audio frames in kbit/s, by version (1 or 2/2.5), layer and index
+	 */
+	private static final int[][][] BIT_RATES = {
+		{
+			{ 0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448 },	// MPEG 1 layer I
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384 },		// MPEG 1 layer II
+			{ 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 },		// MPEG 1 layer III
+		},
+		{
+			{ 0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256 },		// MPEG 2/2.5 layer I
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },			// MPEG 2/2.5 layer II
+			{ 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 },			// MPEG 2/2.5 layer III
+		}
+	};
+
+	/**
+	 * Sample rates of MPEG audio frames in Hz, by version (1, 2, 2.5) and index
+	 */
+	private static final int[][] SAMPLE_RATES = {
+		{ 44100, 48000, 32000 },
+		{ 22050, 24000, 16000 },
+		{ 11025, 12000, 8000 }
+	};
+
+	/**
+	 * Reads the header of a WAV or MP3 file, going by its extension
+	 *
+	 * @param file - the file to read
+	 * @return the information of the file, or null if it is not a WAV or MP3 file that could be read
+	 */
+	public static MediaInfo read(File file) {
+		String name = file.getName().toLowerCase();
+		if (!file.isFile() || !(name.endsWith(".wav") || name.endsWith(".mp3"))) {
+			return null;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r");
+				FileChannel channel = input.getChannel()) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return name.endsWith(".wav") ? readWav(buffer) : readMp3(buffer);
+		} catch (IOException | RuntimeException e) {
+			// Leaving files with broken headers to ffprobe
+			return null;
+		}
+	}
+
+	/**
+	 * Reads a RIFF WAV file. The duration is the size of the data divided by the bytes per
+	 * second, or the sample count of the fact chunk for compressed audio
+	 */
+	private static MediaInfo readWav(MappedByteBuffer buffer) {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < 12 || buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157) {	// "RIFF", "WAVE"
+			return null;
+		}
+
+		int formatTag = -1;
+		int channels = 0;
+		int sampleRate = 0;
+		int byteRate = 0;
+		int bitsPerSample = 0;
+		long factSamples = -1;
+		long dataBytes = -1;
+
+		// Going through the chunks, each being an id and a size followed by the (even padded) data
+		int position = 12;
+		while (position + 8 <= buffer.limit() && dataBytes < 0) {
+			int id = buffer.getInt(position);
+			long size = buffer.getInt(position + 4) & 0xFFFFFFFFL;
+			int body = position + 8;
+			if (id == 0x20746d66 && body + 16 <= buffer.limit()) {			// "fmt "
+				formatTag = buffer.getShort(body) & 0xFFFF;
+				channels = buffer.getShort(body + 2) & 0xFFFF;
+				sampleRate = buffer.getInt(body + 4);
+				byteRate = buffer.getInt(body + 8);
+				bitsPerSample = buffer.getShort(body + 14) & 0xFFFF;
+			} else if (id == 0x74636166 && body + 4 <= buffer.limit()) {	// "fact"
+				factSamples = buffer.getInt(body) & 0xFFFFFFFFL;
+			} else if (id == 0x61746164) {									// "data"
+				// Streamed files (like ones piped out of text2wave) may leave the size unset
+				long available = buffer.limit() - body;
+				dataBytes = (size == 0 || size == 0xFFFFFFFFL || size > available) ? available : size;
+			}
+			position = (int) Math.min(Integer.MAX_VALUE, body + size + (size & 1));
+		}
+		if (formatTag < 0 || dataBytes < 0 || sampleRate <= 0 || byteRate <= 0) {
+			return null;
+		}
+
+		double duration;
+		String codec;
+		if (formatTag == 1 || formatTag == 3 || formatTag == 0xFFFE) {
+			duration = (double) dataBytes / byteRate;
+			codec = ((formatTag == 3) ? "pcm_f" : (bitsPerSample == 8) ? "pcm_u" : "pcm_s") + bitsPerSample
+					+ ((bitsPerSample == 8) ? "" : "le");
+		} else if (factSamples >= 0) {
+			duration = (double) factSamples / sampleRate;
+			codec = "wav_" + formatTag;
+		} else {
+			return null;
+		}
+		return new MediaInfo(duration, null, 0, 0, codec, sampleRate, channels);
+	}
+
+	/**
+	 * Reads an MP3 (or other MPEG audio) file, skipping any ID3v2 tag at its start
+	 */
+	private static MediaInfo readMp3(MappedByteBuffer buffer) {
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		int end = buffer.limit();
+		// An ID3v1 tag takes up the last 128 bytes
+		if (end >= 128 && buffer.get(end - 128) == 'T' && buffer.get(end - 127) == 'A' && buffer.get(end - 126) == 'G') {
+			end -= 128;
+		}
+
+		// Skipping the ID3v2 tags, whose size is stored in 7 bits per byte
+		int position = 0;
+		while (position + 10 <= end && buffer.get(position) == 'I' && buffer.get(position + 1) == 'D' && buffer.get(position + 2) == '3') {
+			int size = ((buffer.get(position + 6) & 0x7F) << 21) | ((buffer.get(position + 7) & 0x7F) << 14)
+					| ((buffer.get(position + 8) & 0x7F) << 7) | (buffer.get(position + 9) & 0x7F);
+			boolean footer = (buffer.get(position + 5) & 0x10) != 0;
+			position += 10 + size + (footer ? 10 : 0);
+		}
+
+		// Finding the first frame, which has to be followed by another one so that stray sync
+		// bits in the tag or junk before it are not taken for a frame
+		Frame first = null;
+		while (position + 4 <= end) {
+			first = Frame.parse(buffer.getInt(position));
+			if (first != null) {
+				int next = position + first.length;
+				if (next + 4 > end || Frame.parse(buffer.getInt(next)) != null || hasSummaryHeader(buffer, position, first, end)) {
+					break;
+				}
+			}
+			first = null;
+			position++;
+		}
+		if (first == null) {
+			return null;
+		}
+
+		// Using the frame count of a Xing/Info or VBRI header if the encoder wrote one
+		long frames = getSummaryFrameCount(buffer, position, first, end);
+		if (frames < 0) {
+			// Walking the frames, resynchronising byte by byte after any damaged frame
+			frames = 0;
+			while (position + 4 <= end) {
+				Frame frame = Frame.parse(buffer.getInt(position));
+				if (frame == null) {
+					position++;
+					continue;
+				}
+				frames++;
+				position += frame.length;
+			}
+		}
+		double duration = (double) frames * first.samplesPerFrame / first.sampleRate;
+		return new MediaInfo(duration, null, 0, 0, "mp" + first.layer, first.sampleRate, first.channels);
+	}
+
+	/**
+	 * Whether the first frame holds a Xing/Info or VBRI header
+	 */
+	private static boolean hasSummaryHeader(MappedByteBuffer buffer, int position, Frame frame, int end) {
+		return getSummaryFrameCount(buffer, position, frame, end) >= 0;
+	}
+
+	/**
+	 * Gets the number of frames from the Xing/Info or VBRI header of the first frame
+	 *
+	 * @return the number of audio frames, or -1 if there is no such header
+	 */
+	private static long getSummaryFrameCount(MappedByteBuffer buffer, int position, Frame frame, int end) {
+		// The Xing header comes straight after the side information of the frame
+		int xing = position + 4 + frame.sideInfoLength;
+		if (xing + 12 <= end) {
+			int id = buffer.getInt(xing);
+			if ((id == 0x58696e67 || id == 0x496e666f) && (buffer.getInt(xing + 4) & 1) != 0) {	// "Xing", "Info"
+				return buffer.getInt(xing + 8) & 0xFFFFFFFFL;
+			}
+		}
+		// The VBRI header is always 32 bytes after the frame header
+		int vbri = position + 36;
+		if (vbri + 18 <= end && buffer.getInt(vbri) == 0x56425249) {	// "VBRI"
+			return buffer.getInt(vbri + 14) & 0xFFFFFFFFL;
+		}
+		return -1;
+	}
+
+	/**
+	 * This class holds what is needed from the 4 byte header of an MPEG audio frame
+	 */
+	private static class Frame {
+
+		private int layer;				// Layer 1, 2 or 3
+		private int sampleRate;			// Sample rate in Hz
+		private int channels;			// 1 for mono, 2 otherwise
+		private int samplesPerFrame;	// Samples of each channel in the frame
+		private int sideInfoLength;		// Bytes after the header up to the end of the side information (layer III)
+		private int length;				// Length of the whole frame in bytes
+
+		/**
+		 * Parses a frame header
+		 *
+		 * @param header - the 4 bytes of the header, big endian
+		 * @return the frame, or null if the bytes are not a valid header
+		 */
+		static Frame parse(int header) {
+			if ((header & 0xFFE00000) != 0xFFE00000) {
+				return null;
+			}
+			int versionBits = (header >>> 19) & 3;	// 0 = 2.5, 2 = 2, 3 = 1
+			int layerBits = (header >>> 17) & 3;	// 1 = III, 2 = II, 3 = I
+			int bitRateIndex = (header >>> 12) & 15;
+			int sampleRateIndex = (header >>> 10) & 3;
+			if (versionBits == 1 || layerBits == 0 || bitRateIndex == 0 || bitRateIndex == 15 || sampleRateIndex == 3) {
+				return null;
+			}
+			boolean mpeg1 = versionBits == 3;
+			boolean padded = ((header >>> 9) & 1) != 0;
+			boolean mono = ((header >>> 6) & 3) == 3;
+
+			Frame frame = new Frame();
+			frame.layer = 4 - layerBits;
+			frame.sampleRate = SAMPLE_RATES[mpeg1 ? 0 : (versionBits == 2) ? 1 : 2][sampleRateIndex];
+			frame.channels = mono ? 1 : 2;
+			int bitRate = BIT_RATES[mpeg1 ? 0 : 1][frame.layer - 1][bitRateIndex] * 1000;
+			if (frame.layer == 1) {
+				frame.samplesPerFrame = 384;
+				frame.length = (12 * bitRate / frame.sampleRate + (padded ? 1 : 0)) * 4;
+			} else {
+				frame.samplesPerFrame = (frame.layer == 3 && !mpeg1) ? 576 : 1152;
+				frame.length = frame.samplesPerFrame / 8 * bitRate / frame.sampleRate + (padded ? 1 : 0);
+			}
+			if (frame.layer == 3) {
+				// A frame protected by a CRC has its 2 bytes before the side information
+				boolean crc = ((header >>> 16) & 1) == 0;
+				frame.sideInfoLength = (crc ? 2 : 0) + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+			}
+			return frame;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package vidivox.media;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class holds the times of the keyframes of a video, which are the only frames that can be
+ * shown straight after a seek without decoding the frames before them. The times are found by
+ * the ThumbnailIndex in the same pass that makes the thumbnails of the video, and are stored in
+ * its index on disk
+ */
+public class KeyframeIndex {
+
+	/**
+	 * Indexes already loaded, by the key of their video
+	 */
+	private static final ConcurrentMap<String, KeyframeIndex> loaded = new ConcurrentHashMap<>();
+
+	/**
+	 * Times of the keyframes in milliseconds, in ascending order
+	 */
+	private final long[] times;
+
+	/**
+	 * Constructor for an index of the given times
+	 *
+	 * @param times - times of the keyframes in milliseconds, in ascending order
+	 */
+	KeyframeIndex(long[] times) {
+		this.times = times;
+	}
+
+	/**
+	 * Gets the index of a video if it has already been loaded
+	 *
+	 * @param videoPath - path to the video
+	 * @return the index, or null if it has not been loaded yet
+	 */
+	public static KeyframeIndex getIfLoaded(String videoPath) {
+		return loaded.get(CacheDirectory.fileKey(new File(videoPath)));
+	}
+
+	/**
+	 * Starts indexing a video in the background if it has not been indexed yet, so that its
+	 * keyframes are ready by the time they are needed
+	 *
+	 * @param videoPath - path to the video
+	 */
+	public static void loadInBackground(String videoPath) {
+		if (videoPath != null && getIfLoaded(videoPath) == null) {
+			ThumbnailIndex.loadInBackground(videoPath);
+		}
+	}
+
+	/**
+	 * Gets the index of a video, indexing it if it has not been indexed before. This can take a
+	 * while for a long video, so it should not be called on the event dispatch thread
+	 *
+	 * @param videoPath - path to the video
+	 * @return the index of the video
+	 * @throws IOException if the video could not be indexed
+	 */
+	public static KeyframeIndex load(String videoPath) throws IOException {
+		KeyframeIndex index = getIfLoaded(videoPath);
+		return (index != null) ? index : ThumbnailIndex.load(videoPath).getKeyframes();
+	}
+
+	/**
+	 * Keeps the keyframes found by the ThumbnailIndex so they can be got without it
+	 *
+	 * @param key - key of the video
+	 * @param index - the keyframes of the video
+	 */
+	static void register(String key, KeyframeIndex index) {
+		loaded.put(key, index);
+	}
+
+	/**
+	 * Gets the number of keyframes
+	 */
+	public int size() {
+		return times.length;
+	}
+
+	/**
+	 * Gets the time of a keyframe
+	 *
+	 * @param i - index of the keyframe, from 0
+	 * @return its time in milliseconds
+	 */
+	public long getTime(int i) {
+		return times[i];
+	}
+
+	/**
+	 * Gets the last keyframe at or before a time
+	 *
+	 * @param timeMillis - the time in milliseconds
+	 * @return the time of the keyframe, or 0 if there is none before the time
+	 */
+	public long floor(long timeMillis) {
+		int i = Arrays.binarySearch(times, timeMillis);
+		if (i >= 0) {
+			return times[i];
+		}
+		int before = -i - 2;
+		return (before >= 0) ? times[before] : 0;
+	}
+
+	/**
+	 * Gets the keyframe closest to a time
+	 *
+	 * @param timeMillis - the time in milliseconds
+	 * @return the time of the keyframe, or the time itself if there are no keyframes
+	 */
+	public long nearest(long timeMillis) {
+		if (times.length == 0) {
+			return timeMillis;
+		}
+		int i = Arrays.binarySearch(times, timeMillis);
+		if (i >= 0) {
+			return times[i];
+		}
+		int after = -i - 1;
+		if (after == 0) {
+			return times[0];
+		}
+		if (after == times.length) {
+			return times[times.length - 1];
+		}
+		long before = times[after - 1];
+		return (timeMillis - before <= times[after] - timeMillis) ? before : times[after];
+	}
+
+	/**
+	 * Gets the last keyframe strictly before a time
+	 *
+	 * @param timeMillis - the time in milliseconds
+	 * @return the time of the keyframe, or 0 if there is none before the time
+	 */
+	public long before(long timeMillis) {
+		return floor(timeMillis - 1);
+	}
+}
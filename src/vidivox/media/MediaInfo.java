@@ -0,0 +1,139 @@
+package vidivox.media;
+
+/**
+ * This class holds what ffprobe found out about a media file: its duration and the codec and
+ * format of its first video and audio streams. It can be written to and read back from a single
+ * line, which is how the MediaProbe keeps it in its index
+ */
+public class MediaInfo {
+
+	/**
+	 * Fields describing the file, the codecs being null if the file has no stream of that type
+	 */
+	private final double durationSeconds;	// Duration of the file in seconds, 0 if not known
+	private final String videoCodec;		// Codec of the first video stream
+	private final int width;				// Width of the video in pixels
+	private final int height;				// Height of the video in pixels
+	private final String audioCodec;		// Codec of the first audio stream
+	private final int sampleRate;			// Sample rate of the audio in Hz
+	private final int channels;				// Number of audio channels
+
+	/**
+	 * Constructor for the information of a file
+	 */
+	public MediaInfo(double durationSeconds, String videoCodec, int width, int height, String audioCodec,
+			int sampleRate, int channels) {
+		this.durationSeconds = durationSeconds;
+		this.videoCodec = videoCodec;
+		this.width = width;
+		this.height = height;
+		this.audioCodec = audioCodec;
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+	}
+
+	/**
+	 * Gets the duration in seconds, 0 if ffprobe could not find it
+	 */
+	public double getDurationSeconds() {
+		return durationSeconds;
+	}
+
+	/**
+	 * Gets the duration in milliseconds, 0 if ffprobe could not find it
+	 */
+	public long getDurationMillis() {
+		return Math.round(durationSeconds * 1000);
+	}
+
+	/**
+	 * Whether the file has a video stream
+	 */
+	public boolean hasVideo() {
+		return videoCodec != null;
+	}
+
+	/**
+	 * Whether the file has an audio stream
+	 */
+	public boolean hasAudio() {
+		return audioCodec != null;
+	}
+
+	/**
+	 * Gets the codec of the video, or null if there is no video
+	 */
+	public String getVideoCodec() {
+		return videoCodec;
+	}
+
+	/**
+	 * Gets the width of the video in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Gets the height of the video in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Gets the codec of the audio, or null if there is no audio
+	 */
+	public String getAudioCodec() {
+		return audioCodec;
+	}
+
+	/**
+	 * Gets the sample rate of the audio in Hz
+	 */
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Gets the number of audio channels
+	 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Writes the information as a single tab separated line
+	 */
+	public String toLine() {
+		return durationSeconds + "\t" + emptyIfNull(videoCodec) + "\t" + width + "\t" + height + "\t"
+				+ emptyIfNull(audioCodec) + "\t" + sampleRate + "\t" + channels;
+	}
+
+	/**
+	 * Reads information written by toLine
+	 *
+	 * @param line - the line to read
+	 * @return the information, or null if the line is not valid
+	 */
+	public static MediaInfo fromLine(String line) {
+		String[] parts = line.split("\t", -1);
+		if (parts.length != 7) {
+			return null;
+		}
+		try {
+			return new MediaInfo(Double.parseDouble(parts[0]), nullIfEmpty(parts[1]), Integer.parseInt(parts[2]),
+					Integer.parseInt(parts[3]), nullIfEmpty(parts[4]), Integer.parseInt(parts[5]), Integer.parseInt(parts[6]));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static String emptyIfNull(String value) {
+		return (value == null) ? "" : value;
+	}
+
+	private static String nullIfEmpty(String value) {
+		return value.isEmpty() ? null : value;
+	}
+}
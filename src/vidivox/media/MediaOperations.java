@@ -0,0 +1,193 @@
+package vidivox.media;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * This class runs the media operations the user interface needs (probing files and transcoding
+ * them with ffmpeg) on background threads, so that no process is ever waited for on the event
+ * dispatch thread. Every operation returns a Future, and can also be given a Callback which is
+ * called on the event dispatch thread once the operation is done, so it can update components
+ * straight away
+ */
+public class MediaOperations {
+
+	/**
+	 * Number of operations run at the same time
+	 */
+	private static final int THREADS = 2;
+
+	/**
+	 * The single instance shared by the whole application
+	 */
+	private static final MediaOperations instance = new MediaOperations();
+
+	/**
+	 * Interface used to receive the result of an operation on the event dispatch thread
+	 *
+	 * @param <T> - type of the result
+	 */
+	public interface Callback<T> {
+		/**
+		 * Called on the event dispatch thread when the operation succeeded
+		 *
+		 * @param result - the result of the operation
+		 */
+		void done(T result);
+
+		/**
+		 * Called on the event dispatch thread when the operation failed
+		 *
+		 * @param e - the reason it failed
+		 */
+		void failed(Exception e);
+	}
+
+	/**
+	 * Threads running the operations
+	 */
+	private final ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Media operation " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Gets the instance shared by the application
+	 */
+	public static MediaOperations getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the information of a file in the background using the MediaProbe
+	 *
+	 * @param path - path to the file
+	 * @param callback - called with the information on the event dispatch thread, may be null
+	 * @return the information, once it is known
+	 */
+	public Future<MediaInfo> probe(final String path, Callback<MediaInfo> callback) {
+		return submit(new Callable<MediaInfo>() {
+			@Override
+			public MediaInfo call() throws Exception {
+				return getInfo(path);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Gets the duration of a file in the background using the MediaProbe
+	 *
+	 * @param path - path to the file
+	 * @param callback - called with the duration in seconds on the event dispatch thread, may be null
+	 * @return the duration in seconds, once it is known
+	 */
+	public Future<Double> getDuration(final String path, Callback<Double> callback) {
+		return submit(new Callable<Double>() {
+			@Override
+			public Double call() throws Exception {
+				return getInfo(path).getDurationSeconds();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Transcodes a file with ffmpeg in the background, the format being chosen from the
+	 * extension of the output
+	 *
+	 * @param inputPath - path to the file to transcode
+	 * @param outputPath - path to write to, replacing any file already there
+	 * @param callback - called with the output file on the event dispatch thread, may be null
+	 * @return the output file, once it has been written
+	 */
+	public Future<File> transcode(final String inputPath, final String outputPath, Callback<File> callback) {
+		return submit(new Callable<File>() {
+			@Override
+			public File call() throws Exception {
+				String cmd = "ffmpeg -y -v error -i \"" + inputPath + "\" \"" + outputPath + "\"";
+				Process process = new ProcessBuilder("/bin/bash", "-c", cmd).redirectErrorStream(true).start();
+
+				// Reading the output so that ffmpeg can never block on it, keeping it for the error
+				StringBuilder output = new StringBuilder();
+				BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					output.append(line).append("\n");
+				}
+				if (process.waitFor() != 0) {
+					throw new IOException("ffmpeg failed: " + output.toString().trim());
+				}
+				return new File(outputPath);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Runs any operation in the background
+	 *
+	 * @param operation - the operation to run
+	 * @param callback - called with its result on the event dispatch thread, may be null
+	 * @return the result of the operation
+	 */
+	public <T> Future<T> submit(final Callable<T> operation, final Callback<T> callback) {
+		FutureTask<T> task = new FutureTask<T>(operation) {
+			@Override
+			protected void done() {
+				if (callback == null || isCancelled()) {
+					return;
+				}
+				// Getting the outcome here, then handing it to the event dispatch thread
+				T result = null;
+				Exception error = null;
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					error = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+				} catch (InterruptedException e) {
+					error = e;
+				}
+				final T finalResult = result;
+				final Exception finalError = error;
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (finalError == null) {
+							callback.done(finalResult);
+						} else {
+							callback.failed(finalError);
+						}
+					}
+				});
+			}
+		};
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * Gets the information of a file, failing if it cannot be read
+	 */
+	private static MediaInfo getInfo(String path) throws IOException {
+		MediaInfo info = MediaProbe.getInstance().get(path);
+		if (info == null) {
+			throw new IOException("Could not read " + path);
+		}
+		return info;
+	}
+}
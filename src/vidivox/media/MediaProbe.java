@@ -0,0 +1,274 @@
+package vidivox.media;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class finds out the duration, streams and codecs of media files, running ffprobe only
+ * once per file. What it finds is kept in memory and in an index in ~/.vidivox/cache/media,
+ * keyed by the path, size and modification time of the file, so a file is not probed again
+ * until it changes, even after vidivox is restarted. WAV and MP3 files are read by AudioHeaders
+ * instead, and ffprobe is only run for them if their headers cannot be read. The number of
+ * lookups answered without running ffprobe is counted so the hit rate of the cache can be checked
+ */
+public class MediaProbe {
+
+	/**
+	 * Most files kept in the index, the ones probed longest ago being dropped first
+	 */
+	private static final int MAX_INDEX_ENTRIES = 5000;
+
+	/**
+	 * The single probe shared by the whole application
+	 */
+	private static final MediaProbe instance = new MediaProbe();
+
+	/**
+	 * Fields of the cache
+	 */
+	private final File indexFile = new File(CacheDirectory.get("media"), "index.properties");	// Persistent index
+	private final ConcurrentMap<String, MediaInfo> memory = new ConcurrentHashMap<>();		// Files looked up this run
+	private final ConcurrentMap<String, Object> keyLocks = new ConcurrentHashMap<>();		// Lock for each key
+	private Properties index;									// Persistent index, loaded on first use
+	private final AtomicLong memoryHits = new AtomicLong();		// Lookups answered from memory
+	private final AtomicLong indexHits = new AtomicLong();		// Lookups answered from the index
+	private final AtomicLong headerReads = new AtomicLong();	// Lookups answered by reading the audio headers
+	private final AtomicLong probes = new AtomicLong();			// Lookups which ran ffprobe
+
+	/**
+	 * Gets the probe shared by the application
+	 */
+	public static MediaProbe getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the information of a file, running ffprobe only if the file has not been probed
+	 * since it last changed
+	 *
+	 * @param path - path to the file
+	 * @return the information of the file, or null if ffprobe could not read it
+	 */
+	public MediaInfo get(String path) {
+		String key = CacheDirectory.fileKey(new File(path));
+		MediaInfo info = memory.get(key);
+		if (info != null) {
+			memoryHits.incrementAndGet();
+			return info;
+		}
+
+		// Only probing a file once when it is asked for by several threads at the same time
+		Object lock = new Object();
+		Object existing = keyLocks.putIfAbsent(key, lock);
+		synchronized ((existing != null) ? existing : lock) {
+			info = memory.get(key);
+			if (info != null) {
+				memoryHits.incrementAndGet();
+				return info;
+			}
+			String line = getIndex().getProperty(key);
+			info = (line != null) ? MediaInfo.fromLine(line.substring(line.indexOf('\t') + 1)) : null;
+			if (info != null) {
+				indexHits.incrementAndGet();
+			} else if ((info = AudioHeaders.read(new File(path))) != null) {
+				// Reading the headers again is cheap, so these files are not added to the index
+				headerReads.incrementAndGet();
+			} else {
+				probes.incrementAndGet();
+				info = probe(path);
+				if (info == null) {
+					return null;
+				}
+				addToIndex(key, info);
+			}
+			memory.put(key, info);
+			return info;
+		}
+	}
+
+	/**
+	 * Gets the duration of a file in seconds
+	 *
+	 * @param path - path to the file
+	 * @return the duration, or 0 if it could not be found
+	 */
+	public double getDurationSeconds(String path) {
+		MediaInfo info = get(path);
+		return (info != null) ? info.getDurationSeconds() : 0;
+	}
+
+	/**
+	 * Gets the share of lookups answered without running ffprobe
+	 *
+	 * @return the hit rate between 0 and 1, or 0 if nothing has been looked up yet
+	 */
+	public double getHitRate() {
+		long hits = memoryHits.get() + indexHits.get() + headerReads.get();
+		long total = hits + probes.get();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Gets a one line summary of the lookups made, e.g. for logging
+	 */
+	public String getSummary() {
+		return String.format("media probe: memory hits=%d index hits=%d header reads=%d probes=%d hit rate=%.1f%%",
+				memoryHits.get(), indexHits.get(), headerReads.get(), probes.get(), getHitRate() * 100);
+	}
+
+	/**
+	 * Runs ffprobe on a file, asking for the duration and every stream in one go. This blocks, so
+	 * the user interface gets the information through the MediaOperations instead
+	 *
+	 * @param path - path to the file
+	 * @return the information found, or null if ffprobe failed
+	 */
+	private MediaInfo probe(String path) {
+		try {
+			Process ffProbeProcess = new ProcessBuilder("/bin/bash", "-c", "ffprobe -v error -show_entries "
+					+ "format=duration:stream=codec_type,codec_name,width,height,sample_rate,channels \"" + path + "\"").start();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(ffProbeProcess.getInputStream()));
+
+			// Reading the sections ffprobe writes, keeping the first video and audio stream
+			Map<String, String> video = null;
+			Map<String, String> audio = null;
+			Map<String, String> section = new HashMap<>();
+			double duration = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.startsWith("[/STREAM")) {
+					if (video == null && "video".equals(section.get("codec_type"))) {
+						video = section;
+					} else if (audio == null && "audio".equals(section.get("codec_type"))) {
+						audio = section;
+					}
+					section = new HashMap<>();
+				} else if (line.startsWith("duration=")) {
+					duration = parseDouble(line.substring("duration=".length()));
+				} else if (line.contains("=")) {
+					section.put(line.substring(0, line.indexOf('=')), line.substring(line.indexOf('=') + 1));
+				}
+			}
+			if (ffProbeProcess.waitFor() != 0) {
+				System.err.println("ffprobe could not read " + path);
+				return null;
+			}
+
+			return new MediaInfo(duration,
+					(video != null) ? video.get("codec_name") : null,
+					(video != null) ? parseInt(video.get("width")) : 0,
+					(video != null) ? parseInt(video.get("height")) : 0,
+					(audio != null) ? audio.get("codec_name") : null,
+					(audio != null) ? parseInt(audio.get("sample_rate")) : 0,
+					(audio != null) ? parseInt(audio.get("channels")) : 0);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the persistent index, reading it the first time it is needed
+	 */
+	private synchronized Properties getIndex() {
+		if (index == null) {
+			index = new Properties();
+			if (indexFile.isFile()) {
+				try (InputStream in = new FileInputStream(indexFile)) {
+					index.load(in);
+				} catch (IOException | IllegalArgumentException e) {
+					System.err.println("Media index could not be read, probing files again");
+					index.clear();
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a file to the persistent index and writes the index out. Each entry starts with the
+	 * time the file was probed so that the oldest entries can be dropped once the index is full
+	 */
+	private synchronized void addToIndex(String key, MediaInfo info) {
+		Properties current = getIndex();
+		current.setProperty(key, System.currentTimeMillis() + "\t" + info.toLine());
+		if (current.size() > MAX_INDEX_ENTRIES) {
+			dropOldest(current, current.size() - MAX_INDEX_ENTRIES * 3 / 4);
+		}
+
+		// Writing to a temporary file which replaces the index once complete
+		File part = new File(indexFile.getPath() + ".part");
+		try {
+			try (OutputStream out = new FileOutputStream(part)) {
+				current.store(out, "vidivox media index");
+			}
+			Files.move(part.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Media index could not be written: " + e.getMessage());
+			part.delete();
+		}
+	}
+
+	/**
+	 * Drops the entries of the index which were probed longest ago
+	 */
+	private static void dropOldest(final Properties index, int count) {
+		List<String> keys = new ArrayList<>(index.stringPropertyNames());
+		Collections.sort(keys, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return Long.compare(probedAt(index.getProperty(a)), probedAt(index.getProperty(b)));
+			}
+		});
+		for (int i = 0; i < count && i < keys.size(); i++) {
+			index.remove(keys.get(i));
+		}
+	}
+
+	private static long probedAt(String entry) {
+		try {
+			return Long.parseLong(entry.substring(0, Math.max(0, entry.indexOf('\t'))));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static double parseDouble(String value) {
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static int parseInt(String value) {
+		try {
+			return (value != null) ? Integer.parseInt(value) : 0;
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,407 @@
+package vidivox.media;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class indexes a video once so the seek slider can show previews and seek quickly. A
+ * single ffmpeg pass decodes only the keyframes of the video, logging the time of every one of
+ * them and scaling one every few seconds down to a small JPEG thumbnail. The keyframe times and
+ * the thumbnails are kept together in one compact file in ~/.vidivox/cache/thumbnails, keyed by
+ * the path, size and modification time of the video, whose total size is kept within
+ * -Dvidivox.thumbnailCacheMegabytes (256MB by default)
+ */
+public class ThumbnailIndex {
+
+	/**
+	 * Width of the thumbnails in pixels, the height keeping the aspect ratio of the video
+	 */
+	public static final int THUMBNAIL_WIDTH = 160;
+
+	/**
+	 * Limits on the time between thumbnails, chosen so a video has at most MAX_THUMBNAILS
+	 */
+	private static final int MIN_INTERVAL_MILLIS = 2000;
+	private static final int MAX_THUMBNAILS = 400;
+
+	/**
+	 * Identifies the index files and the version of their layout
+	 */
+	private static final int MAGIC = 0x56565449;	// "VVTI"
+	private static final int VERSION = 1;
+
+	/**
+	 * The index of the video most recently loaded, its thumbnails only being kept for one video
+	 */
+	private static volatile ThumbnailIndex current;
+
+	/**
+	 * Videos being indexed in the background
+	 */
+	private static final Set<String> loading = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Thread indexing videos in the background, one at a time
+	 */
+	private static final ExecutorService indexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Video indexer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	/**
+	 * Fields of the index
+	 */
+	private final String key;					// Key of the video
+	private final KeyframeIndex keyframes;		// Times of the keyframes
+	private final long[] thumbnailTimes;		// Times of the thumbnails in milliseconds, ascending
+	private final byte[][] thumbnails;			// JPEG data of each thumbnail
+	private int decodedIndex = -1;				// Thumbnail last decoded
+	private BufferedImage decodedImage;			// Image of the thumbnail last decoded
+
+	/**
+	 * Constructor for an index
+	 */
+	private ThumbnailIndex(String key, KeyframeIndex keyframes, long[] thumbnailTimes, byte[][] thumbnails) {
+		this.key = key;
+		this.keyframes = keyframes;
+		this.thumbnailTimes = thumbnailTimes;
+		this.thumbnails = thumbnails;
+	}
+
+	/**
+	 * Gets the index of a video if it is the one loaded
+	 *
+	 * @param videoPath - path to the video
+	 * @return the index, or null if it has not been loaded
+	 */
+	public static ThumbnailIndex getIfLoaded(String videoPath) {
+		ThumbnailIndex index = current;
+		return (index != null && index.key.equals(CacheDirectory.fileKey(new File(videoPath)))) ? index : null;
+	}
+
+	/**
+	 * Starts loading (and if needed making) the index of a video on the indexing thread
+	 *
+	 * @param videoPath - path to the video
+	 */
+	public static void loadInBackground(final String videoPath) {
+		if (videoPath == null || getIfLoaded(videoPath) != null || !loading.add(videoPath)) {
+			return;
+		}
+		indexer.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					load(videoPath);
+				} catch (IOException e) {
+					System.err.println("Could not index " + videoPath + ": " + e.getMessage());
+				} finally {
+					loading.remove(videoPath);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the index of a video, reading it from the cache or indexing the video if needed. This
+	 * can take a while for a long video, so it should not be called on the event dispatch thread
+	 *
+	 * @param videoPath - path to the video
+	 * @return the index of the video
+	 * @throws IOException if ffmpeg could not index the video
+	 */
+	public static synchronized ThumbnailIndex load(String videoPath) throws IOException {
+		ThumbnailIndex index = getIfLoaded(videoPath);
+		if (index != null) {
+			return index;
+		}
+
+		String key = CacheDirectory.fileKey(new File(videoPath));
+		File directory = CacheDirectory.get("thumbnails");
+		File file = new File(directory, key + ".vvti");
+		index = read(key, file);
+		if (index == null) {
+			index = build(key, videoPath);
+			write(index, file);
+			CacheDirectory.trim(directory, CacheDirectory.budget("vidivox.thumbnailCacheMegabytes", 256));
+		}
+		KeyframeIndex.register(key, index.keyframes);
+		current = index;
+		return index;
+	}
+
+	/**
+	 * Gets the keyframes of the video
+	 */
+	public KeyframeIndex getKeyframes() {
+		return keyframes;
+	}
+
+	/**
+	 * Gets the number of thumbnails
+	 */
+	public int getThumbnailCount() {
+		return thumbnails.length;
+	}
+
+	/**
+	 * Gets the time of the thumbnail shown for a time of the video, which is the last one at or
+	 * before it
+	 *
+	 * @param timeMillis - time of the video in milliseconds
+	 * @return the time of the thumbnail, or -1 if there is none
+	 */
+	public long getThumbnailTime(long timeMillis) {
+		int i = findThumbnail(timeMillis);
+		return (i >= 0) ? thumbnailTimes[i] : -1;
+	}
+
+	/**
+	 * Gets the thumbnail shown for a time of the video, which is the last one at or before it
+	 *
+	 * @param timeMillis - time of the video in milliseconds
+	 * @return the thumbnail, or null if there is none
+	 */
+	public synchronized BufferedImage getThumbnail(long timeMillis) {
+		int i = findThumbnail(timeMillis);
+		if (i < 0) {
+			return null;
+		}
+		// Hovering mostly stays on the same thumbnail, so the last one decoded is kept
+		if (i != decodedIndex) {
+			try {
+				decodedImage = ImageIO.read(new ByteArrayInputStream(thumbnails[i]));
+			} catch (IOException e) {
+				decodedImage = null;
+			}
+			decodedIndex = i;
+		}
+		return decodedImage;
+	}
+
+	/**
+	 * Finds the last thumbnail at or before a time
+	 *
+	 * @return the index of the thumbnail, or -1 if there is none
+	 */
+	private int findThumbnail(long timeMillis) {
+		if (thumbnailTimes.length == 0) {
+			return -1;
+		}
+		int i = Arrays.binarySearch(thumbnailTimes, timeMillis);
+		return (i >= 0) ? i : Math.max(0, -i - 2);
+	}
+
+	/**
+	 * Indexes a video with a single ffmpeg pass which only decodes its keyframes. The first
+	 * showinfo filter logs every keyframe, the select filter keeps one keyframe every interval,
+	 * and the second showinfo filter logs the times of the ones kept, which are written to stdout
+	 * as a stream of JPEG images
+	 */
+	private static ThumbnailIndex build(String key, String videoPath) throws IOException {
+		double duration = MediaProbe.getInstance().getDurationSeconds(videoPath);
+		long interval = Math.max(MIN_INTERVAL_MILLIS, Math.round(duration * 1000 / MAX_THUMBNAILS));
+		String filter = "showinfo,select='isnan(prev_selected_t)+gte(t-prev_selected_t," + (interval / 1000.0) + ")',"
+				+ "scale=" + THUMBNAIL_WIDTH + ":-2,showinfo";
+		String cmd = "exec nice -n 10 ffmpeg -v info -nostats -skip_frame nokey -i \"" + videoPath + "\" -an -sn -vf \""
+				+ filter + "\" -vsync 0 -c:v mjpeg -q:v 6 -f image2pipe pipe:1";
+		final Process process = new ProcessBuilder("/bin/bash", "-c", cmd).start();
+
+		// Reading the times logged by the two showinfo filters on their own thread
+		final List<Long> keyframeTimes = new ArrayList<>();
+		final List<Long> thumbnailTimes = new ArrayList<>();
+		final StringBuffer errors = new StringBuffer();
+		Thread logReader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
+				try {
+					String line;
+					while ((line = reader.readLine()) != null) {
+						int time = line.indexOf("pts_time:");
+						if (line.contains("Parsed_showinfo_0") && time >= 0) {
+							keyframeTimes.add(parseTime(line, time));
+						} else if (line.contains("Parsed_showinfo_3") && time >= 0) {
+							thumbnailTimes.add(parseTime(line, time));
+						} else {
+							errors.append(line).append("\n");
+							if (errors.length() > 2000) {
+								errors.delete(0, errors.length() - 2000);
+							}
+						}
+					}
+				} catch (IOException e) {
+					// ffmpeg has exited
+				}
+			}
+		}, "Video indexer log");
+		logReader.setDaemon(true);
+		logReader.start();
+
+		// Splitting the images written on stdout
+		List<byte[]> images = readJpegs(new BufferedInputStream(process.getInputStream()));
+		try {
+			int exitValue = process.waitFor();
+			logReader.join();
+			if (exitValue != 0) {
+				throw new IOException(errors.toString().trim());
+			}
+		} catch (InterruptedException e) {
+			process.destroy();
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while indexing " + videoPath);
+		}
+
+		// Each image matches the time logged for it, in the same order
+		int count = Math.min(images.size(), thumbnailTimes.size());
+		long[] times = new long[count];
+		for (int i = 0; i < count; i++) {
+			times[i] = thumbnailTimes.get(i);
+		}
+		long[] keyframes = new long[keyframeTimes.size()];
+		for (int i = 0; i < keyframes.length; i++) {
+			keyframes[i] = keyframeTimes.get(i);
+		}
+		Arrays.sort(keyframes);
+		return new ThumbnailIndex(key, new KeyframeIndex(keyframes), times, images.subList(0, count).toArray(new byte[count][]));
+	}
+
+	/**
+	 * Reads the time after "pts_time:" in a line logged by showinfo
+	 */
+	private static long parseTime(String line, int index) {
+		int start = index + "pts_time:".length();
+		int end = start;
+		while (end < line.length() && line.charAt(end) != ' ') {
+			end++;
+		}
+		try {
+			return Math.round(Double.parseDouble(line.substring(start, end)) * 1000);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Splits a stream of JPEG images, each running from its start of image marker (FF D8) to its
+	 * end of image marker (FF D9), which cannot appear inside the compressed data
+	 */
+	private static List<byte[]> readJpegs(InputStream in) throws IOException {
+		List<byte[]> images = new ArrayList<>();
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		boolean inImage = false;
+		int previous = -1;
+		int b;
+		while ((b = in.read()) >= 0) {
+			if (!inImage) {
+				if (previous == 0xFF && b == 0xD8) {
+					inImage = true;
+					image.reset();
+					image.write(0xFF);
+					image.write(0xD8);
+					b = -1;
+				}
+			} else {
+				image.write(b);
+				if (previous == 0xFF && b == 0xD9) {
+					images.add(image.toByteArray());
+					inImage = false;
+					b = -1;
+				}
+			}
+			previous = b;
+		}
+		return images;
+	}
+
+	/**
+	 * Reads an index from the cache
+	 *
+	 * @return the index, or null if it is not cached or could not be read
+	 */
+	private static ThumbnailIndex read(String key, File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			long[] keyframes = new long[in.readInt()];
+			for (int i = 0; i < keyframes.length; i++) {
+				keyframes[i] = in.readInt();
+			}
+			long[] times = new long[in.readInt()];
+			byte[][] thumbnails = new byte[times.length][];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = in.readInt();
+				thumbnails[i] = new byte[in.readInt()];
+				in.readFully(thumbnails[i]);
+			}
+			CacheDirectory.touch(file);
+			return new ThumbnailIndex(key, new KeyframeIndex(keyframes), times, thumbnails);
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			return null;
+		}
+	}
+
+	/**
+	 * Writes an index to the cache, through a temporary file so a partly written index is never
+	 * read. Times are stored as ints of milliseconds, which covers videos of hundreds of hours
+	 */
+	private static void write(ThumbnailIndex index, File file) {
+		File part = new File(file.getPath() + ".part");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(part)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(index.keyframes.size());
+				for (int i = 0; i < index.keyframes.size(); i++) {
+					out.writeInt((int) index.keyframes.getTime(i));
+				}
+				out.writeInt(index.thumbnailTimes.length);
+				for (int i = 0; i < index.thumbnailTimes.length; i++) {
+					out.writeInt((int) index.thumbnailTimes[i]);
+					out.writeInt(index.thumbnails[i].length);
+					out.write(index.thumbnails[i]);
+				}
+			}
+			Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			System.err.println("Thumbnail index could not be written: " + e.getMessage());
+			part.delete();
+		}
+	}
+}
@@ -0,0 +1,305 @@
+package vidivox.speech;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import vidivox.util.LatencyRecorder;
+
+/**
+ * This class keeps a small pool of long lived festival interpreters, each one driven through
+ * its stdin and stdout pipes with every voice already loaded. A synthesis only has to send the
+ * scheme selecting the voice and pitch followed by the text, instead of starting text2wave and
+ * loading a diphone voice every time. The number of interpreters can be set with
+ * -Dvidivox.festivalInstances (one less than the number of cores, between 1 and 4, by default),
+ * and the time taken by every synthesis is recorded so its percentiles can be reported. If
+ * festival cannot be started the syntheses fall back to text2wave, and starting it is tried
+ * again after a while
+ */
+public class FestivalPool {
+
+	/**
+	 * Constants used when talking to the interpreters
+	 */
+	private static final String[] VOICES = { "voice_rab_diphone", "voice_akl_nz_jdt_diphone", "voice_kal_diphone" };
+	private static final String DONE_MARKER = "vidivox-festival-done";	// Line printed after every job
+	private static final long START_TIMEOUT_SECONDS = 60;				// Time allowed to load the voices
+	private static final long JOB_TIMEOUT_SECONDS = 30;					// Time allowed for one synthesis
+	private static final long RETRY_MILLIS = 60000;						// Time before starting festival is tried again
+
+	/**
+	 * The single pool shared by the whole application
+	 */
+	private static final FestivalPool instance = new FestivalPool(Integer.getInteger("vidivox.festivalInstances",
+			Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1))));
+
+	/**
+	 * Fields of the pool
+	 */
+	private final int size;													// Most interpreters run at once
+	private final Semaphore slots;											// One permit for every interpreter that may be used
+	private final BlockingQueue<Interpreter> idle = new LinkedBlockingQueue<>();	// Interpreters waiting for a job
+	private volatile long retryAt = 0;										// Time festival may be started again after failing
+	private final LatencyRecorder latency = new LatencyRecorder("Festival synthesis");
+	private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "Festival watchdog");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Gets the pool shared by the application
+	 */
+	public static FestivalPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Constructor for the pool, which stops the interpreters when the application exits
+	 *
+	 * @param size - the most interpreters to run at once
+	 */
+	private FestivalPool(int size) {
+		this.size = Math.max(1, size);
+		this.slots = new Semaphore(this.size);
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (Interpreter interpreter : idle) {
+					interpreter.destroy();
+				}
+			}
+		}));
+		latency.printOnExit();
+	}
+
+	/**
+	 * Starts an interpreter in the background so the voices are loaded before the first
+	 * commentary is typed
+	 */
+	public void warmUp() {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release(acquire());
+				} catch (IOException | InterruptedException e) {
+					// Syntheses will fall back to text2wave
+				}
+			}
+		}, "Festival warm up");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the most interpreters run at once
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Whether festival can be used, false for a while after it could not be started, during
+	 * which text2wave should be used instead
+	 */
+	public boolean isAvailable() {
+		return System.currentTimeMillis() >= retryAt;
+	}
+
+	/**
+	 * Synthesizes text into a wav file on one of the interpreters, waiting for one to be free
+	 *
+	 * @param text - the text to speak
+	 * @param scheme - the scheme selecting the voice and pitch
+	 * @param output - the wav file to write
+	 * @throws IOException if festival could not synthesize the text
+	 * @throws InterruptedException if interrupted while waiting for an interpreter
+	 */
+	public void synthesize(String text, String scheme, File output) throws IOException, InterruptedException {
+		long startNanos = System.nanoTime();
+		Interpreter interpreter = acquire();
+
+		// Selecting the voice first also restores its own intonation settings, so the pitch of
+		// an earlier job does not carry over to this one
+		String job = scheme + "\n(utt.save.wave (utt.synth (Utterance Text " + quote(text) + ")) "
+				+ quote(output.getAbsolutePath()) + " 'riff)\n";
+		try {
+			interpreter.run(job, JOB_TIMEOUT_SECONDS);
+		} catch (IOException e) {
+			discard(interpreter);
+			throw e;
+		}
+		release(interpreter);
+
+		if (!output.isFile() || output.length() == 0) {
+			throw new IOException("festival did not write " + output);
+		}
+		latency.recordSince(startNanos);
+	}
+
+	/**
+	 * Gets the latencies of the syntheses made by the pool, including the time spent waiting
+	 * for a free interpreter
+	 */
+	public LatencyRecorder getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Takes an idle interpreter, starting a new one if there is none. Every interpreter in use
+	 * holds one of the slots, so waiting for a slot never stops a failed interpreter from being
+	 * discarded, and a discarded interpreter frees its slot for a new one
+	 */
+	private Interpreter acquire() throws IOException, InterruptedException {
+		if (!isAvailable()) {
+			throw new IOException("festival is not available");
+		}
+		slots.acquire();
+		Interpreter interpreter = idle.poll();
+		if (interpreter != null) {
+			return interpreter;
+		}
+		try {
+			return new Interpreter(watchdog);
+		} catch (IOException e) {
+			slots.release();
+			retryAt = System.currentTimeMillis() + RETRY_MILLIS;
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns an interpreter to the pool once its job is done
+	 */
+	private void release(Interpreter interpreter) {
+		idle.add(interpreter);
+		slots.release();
+	}
+
+	/**
+	 * Stops an interpreter which failed, making room for a new one
+	 */
+	private void discard(Interpreter interpreter) {
+		interpreter.destroy();
+		slots.release();
+	}
+
+	/**
+	 * Quotes a string for the festival scheme interpreter
+	 */
+	private static String quote(String string) {
+		return "\"" + string.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	/**
+	 * This class is a single festival interpreter running in pipe mode. After every job it asks
+	 * the shell to echo a marker line, which tells when the job has finished as festival does
+	 * not flush its own output when writing to a pipe
+	 */
+	private static class Interpreter {
+
+		/**
+		 * Fields of the interpreter
+		 */
+		private final Process process;					// The festival process
+		private final Writer input;						// Scheme sent to festival
+		private final BufferedReader output;			// Output of festival, read up to the marker
+		private final ScheduledExecutorService watchdog;	// Stops jobs which take too long
+
+		/**
+		 * Constructor starting festival and loading every voice
+		 *
+		 * @param watchdog - executor used to stop jobs which take too long
+		 * @throws IOException if festival could not be started
+		 */
+		Interpreter(ScheduledExecutorService watchdog) throws IOException {
+			this.watchdog = watchdog;
+			process = new ProcessBuilder("/bin/bash", "-c", "exec festival --pipe").start();
+			input = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+			output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+			drain(process.getErrorStream());
+
+			// Loading every voice now so that switching voices later is instant
+			StringBuilder preload = new StringBuilder();
+			for (String voice : VOICES) {
+				preload.append("(" + voice + ")\n");
+			}
+			run(preload.toString(), START_TIMEOUT_SECONDS);
+		}
+
+		/**
+		 * Sends scheme to festival and waits until it has been evaluated
+		 *
+		 * @param scheme - the scheme to evaluate
+		 * @param timeoutSeconds - time after which festival is stopped
+		 * @throws IOException if festival stopped before finishing
+		 */
+		void run(String scheme, long timeoutSeconds) throws IOException {
+			ScheduledFuture<?> timeout = watchdog.schedule(new Runnable() {
+				@Override
+				public void run() {
+					process.destroy();
+				}
+			}, timeoutSeconds, TimeUnit.SECONDS);
+			try {
+				input.write(scheme);
+				input.write("(system \"echo " + DONE_MARKER + "\")\n");
+				input.flush();
+
+				// Skipping anything festival printed until the marker shows the job is done
+				String line;
+				while ((line = output.readLine()) != null) {
+					if (line.equals(DONE_MARKER)) {
+						return;
+					}
+				}
+				throw new IOException("festival stopped unexpectedly");
+			} finally {
+				timeout.cancel(false);
+			}
+		}
+
+		/**
+		 * Stops festival
+		 */
+		void destroy() {
+			process.destroy();
+		}
+
+		/**
+		 * Reads and throws away the error output of festival so it can never fill up and block
+		 */
+		private static void drain(final InputStream stream) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					byte[] buffer = new byte[4096];
+					try {
+						while (stream.read(buffer) >= 0) {
+							// Discarded
+						}
+					} catch (IOException e) {
+						// Festival has stopped
+					}
+				}
+			}, "Festival error output");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package vidivox.speech;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import vidivox.util.CacheDirectory;
+
+/**
+ * This class is a persistent cache of synthesized speech. Each wav file is stored in
+ * ~/.vidivox/cache/tts under a hash of the text, the festival scheme setting the voice and
+ * pitch, and the version of the synthesis engine, so a commentary which has been synthesized
+ * before (e.g. after switching the voice back, or reopening a project) is available instantly
+ * and identical commentaries share one file. The least recently used files are evicted once
+ * the cache grows past its size budget (-Dvidivox.ttsCacheMegabytes, 256MB by default), except
+ * for the files that overlays are currently using
+ */
+public class SpeechCache {
+
+	/**
+	 * Version of the synthesis, to be changed whenever the synthesized audio would change so
+	 * that files made by an older version are not used
+	 */
+	public static final String ENGINE_VERSION = "festival-pipe-1";
+
+	/**
+	 * Number of locks the keys are spread over
+	 */
+	private static final int LOCK_STRIPES = 64;
+
+	/**
+	 * The single cache shared by the whole application
+	 */
+	private static final SpeechCache instance = new SpeechCache();
+
+	/**
+	 * Fields of the cache
+	 */
+	private final File directory = CacheDirectory.get("tts");						// Directory of the cached files
+	private final long maxBytes = CacheDirectory.budget("vidivox.ttsCacheMegabytes", 256);	// Size budget
+	private final Object[] keyLocks = new Object[LOCK_STRIPES];						// Locks the keys are spread over
+	private final Map<Object, File> inUse = Collections.synchronizedMap(new WeakHashMap<Object, File>());	// File used by each overlay
+
+	/**
+	 * Constructor for the cache
+	 */
+	private SpeechCache() {
+		for (int i = 0; i < keyLocks.length; i++) {
+			keyLocks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Gets the cache shared by the application
+	 */
+	public static SpeechCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets the key of a synthesis
+	 *
+	 * @param text - the text being spoken
+	 * @param scheme - the festival scheme selecting the voice and pitch
+	 * @return the key of the synthesized file
+	 */
+	public String key(String text, String scheme) {
+		return CacheDirectory.hash(ENGINE_VERSION, text, scheme);
+	}
+
+	/**
+	 * Gets the lock held while a key is being synthesized, so that identical requests made at
+	 * the same time wait for the first one instead of synthesizing the same text twice. The keys
+	 * share a fixed number of locks, so nothing has to be cleaned up once a synthesis is done
+	 *
+	 * @param key - the key of the synthesis
+	 * @return the object to synchronize on
+	 */
+	public Object lockFor(String key) {
+		return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % keyLocks.length];
+	}
+
+	/**
+	 * Records the cached file an overlay plays from, so it is not evicted while the overlay uses
+	 * it. The overlay is only weakly referenced, so its file can be evicted again once it is gone
+	 *
+	 * @param owner - the overlay using the file
+	 * @param file - the file it uses, or null if it no longer uses one
+	 */
+	public void use(Object owner, File file) {
+		if (file == null) {
+			inUse.remove(owner);
+		} else {
+			inUse.put(owner, file.getAbsoluteFile());
+		}
+	}
+
+	/**
+	 * Gets the cached file for a key
+	 *
+	 * @param key - the key of the synthesis
+	 * @return the cached wav file, or null if it has not been synthesized before
+	 */
+	public File lookup(String key) {
+		File cached = new File(directory, key + ".wav");
+		if (cached.isFile() && cached.length() > 0) {
+			CacheDirectory.touch(cached);
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * Moves a freshly synthesized file into the cache
+	 *
+	 * @param key - the key of the synthesis
+	 * @param synthesized - the synthesized wav file
+	 * @return the file in the cache
+	 * @throws IOException if the file could not be moved
+	 */
+	public File store(String key, File synthesized) throws IOException {
+		File cached = new File(directory, key + ".wav");
+		Files.move(synthesized.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		CacheDirectory.touch(cached);
+		List<File> keep;
+		synchronized (inUse) {
+			keep = new ArrayList<>(inUse.values());
+		}
+		keep.add(cached.getAbsoluteFile());
+		CacheDirectory.trim(directory, maxBytes, keep);
+		return cached;
+	}
+}
@@ -0,0 +1,220 @@
+package vidivox.speech;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * This class synthesizes one commentary into a wav file with the chosen voice and pitch. Text
+ * which has already been synthesized with the same voice and pitch is taken from the
+ * SpeechCache, and new text is synthesized on the FestivalPool, falling back to a text2wave
+ * process if festival cannot be used that way. It does not depend on Swing, so it is used both
+ * by the SpeechSynthesisWorker and by the command line export
+ */
+public class SpeechSynthesizer {
+
+	/**
+	 * Fields describing the synthesis
+	 */
+	private final String text;						// Text that is to be converted to audio
+	private final String voice;						// Voice selected (Robotic, British or NZ'er)
+	private final String pitch;						// Pitch selected (Normal, Low or High)
+	private volatile Process synthesisProcess;		// text2wave process, if festival could not be used
+	private volatile boolean cancelled = false;		// Whether the synthesis has been cancelled
+
+	/**
+	 * Constructor for a synthesis
+	 *
+	 * @param text - text to be created into audio
+	 * @param voice - the voice selected (Robotic, British or NZ'er)
+	 * @param pitch - the pitch selected (Normal, Low or High)
+	 */
+	public SpeechSynthesizer(String text, String voice, String pitch) {
+		this.text = text;
+		this.voice = voice;
+		this.pitch = pitch;
+	}
+
+	/**
+	 * Synthesizes the text, blocking until it is done
+	 *
+	 * @param workFile - file text2wave writes to if it has to be used
+	 * @return the wav file in the SpeechCache, or null if the synthesis failed or was cancelled
+	 * @throws InterruptedException if interrupted while waiting for the synthesis
+	 */
+	public File synthesize(File workFile) throws InterruptedException {
+
+		// Not starting the process at all if this synthesis was cancelled before it ran
+		if (cancelled) {
+			return null;
+		}
+
+		// Changing the voice command depending on user choice
+		String voiceCommand = "voice_kal_diphone";
+		if (voice.equals("British")) {
+			voiceCommand = "voice_rab_diphone";
+		} else if (voice.equals("NZ'er")) {
+			voiceCommand = "voice_akl_nz_jdt_diphone";
+		}
+
+		// Changing the pitch input depending on user choice
+		int pitchInt = 100;
+		if (pitch.equals("Low")) {
+			pitchInt = 50;
+		} else if (pitch.equals("High")) {
+			pitchInt = 300;
+		}
+
+		// Using the cached wav file if this text has been synthesized with this voice and pitch
+		// before, and otherwise making sure the same text is not synthesized twice at once
+		SpeechCache cache = SpeechCache.getInstance();
+		String scheme = buildScheme(pitchInt, pitchInt, voiceCommand);
+		String key = cache.key(text, scheme);
+		synchronized (cache.lockFor(key)) {
+			File cached = cache.lookup(key);
+			if (cached != null) {
+				return cached;
+			}
+
+			// Synthesizing on one of the festival interpreters which already have the voices
+			// loaded, and only starting text2wave if festival cannot be used that way
+			File synthesized = synthesizeOnPool(key, scheme);
+			if (synthesized != null) {
+				return synthesized;
+			}
+
+			// Calling method to change the voice and pitch
+			try {
+				changeVoice(workFile, scheme);
+			} catch (IOException e) {
+				e.printStackTrace();
+				deleteWorkFiles(workFile);
+				return null;
+			}
+
+			try {
+				// Waiting for the process, making sure it does not outlive a cancelled synthesis
+				int exitValue;
+				try {
+					if (cancelled) {
+						synthesisProcess.destroy();
+					}
+					exitValue = synthesisProcess.waitFor();
+				} catch (InterruptedException e) {
+					synthesisProcess.destroy();
+					throw e;
+				}
+
+				// Keeping the wav file for identical requests if it was synthesized completely
+				if (exitValue == 0 && !cancelled) {
+					try {
+						return cache.store(key, workFile);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			} finally {
+				deleteWorkFiles(workFile);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Cancels the synthesis, stopping the text2wave process if there is one
+	 */
+	public void cancel() {
+		cancelled = true;
+		Process running = synthesisProcess;
+		if (running != null) {
+			running.destroy();
+		}
+	}
+
+	/**
+	 * Synthesizes the text on the FestivalPool and stores the wav file in the SpeechCache
+	 *
+	 * @param key - the key of the synthesis in the cache
+	 * @param scheme - the scheme selecting the voice and pitch
+	 * @return the wav file in the cache, or null if text2wave should be used instead
+	 */
+	private File synthesizeOnPool(String key, String scheme) throws InterruptedException {
+		FestivalPool pool = FestivalPool.getInstance();
+		if (!pool.isAvailable()) {
+			return null;
+		}
+		File wavFile = null;
+		try {
+			wavFile = File.createTempFile("festival", ".wav");
+			pool.synthesize(text, scheme, wavFile);
+
+			// The synthesis has finished even if it was cancelled meanwhile, so it is kept for later
+			return SpeechCache.getInstance().store(key, wavFile);
+		} catch (IOException e) {
+			if (wavFile != null) {
+				wavFile.delete();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * This method builds a text file and scm file to pass into text2wave, then starts text2wave
+	 *
+	 * @param workFile - the wav file text2wave writes
+	 * @param scheme - the scheme selecting the voice and pitch
+	 * @throws IOException
+	 */
+	private void changeVoice(File workFile, String scheme) throws IOException {
+		String filePath = workFile.getAbsolutePath();
+
+		// Building the text file
+		File textFile = new File(filePath + ".txt");
+		FileWriter fw = new FileWriter(textFile.getAbsoluteFile());
+		BufferedWriter bw = new BufferedWriter(fw);
+		bw.write(text);
+		bw.close();
+
+		// Building the scm file
+		File scmFile = new File(filePath + "SchemeFile.scm");
+		FileWriter scmFileFw = new FileWriter(scmFile.getAbsoluteFile());
+		BufferedWriter scmFileBw = new BufferedWriter(scmFileFw);
+		scmFileBw.write(scheme);
+		scmFileBw.close();
+
+		// Building the process which is then started
+		String cmd = "text2wave -o " + filePath + " " + textFile + " -eval " + scmFile;
+		synthesisProcess = new ProcessBuilder("/bin/bash", "-c", cmd).start();
+	}
+
+	/**
+	 * Deletes the files written for text2wave, leaving nothing behind once the wav file has been
+	 * moved into the cache (or the synthesis has failed)
+	 *
+	 * @param workFile - the wav file text2wave writes
+	 */
+	private void deleteWorkFiles(File workFile) {
+		String filePath = workFile.getAbsolutePath();
+		new File(filePath + ".txt").delete();
+		new File(filePath + "SchemeFile.scm").delete();
+		workFile.delete();
+	}
+
+	/**
+	 * Builds the festival scheme which selects the voice and sets the pitch
+	 *
+	 * @param start - pitch at the start of the speech
+	 * @param end - pitch at the end of the speech
+	 * @param voiceCommand - festival command selecting the voice
+	 * @return the scheme to evaluate before synthesizing
+	 */
+	private String buildScheme(int start, int end, String voiceCommand) {
+		String scmFileText = "(" + voiceCommand + ")";
+		if (pitch.equals("Low") || pitch.equals("High")) {
+			scmFileText = scmFileText + "(set! duffint_params \'((start " + start + ") (end " + end + ")))\n";
+			scmFileText = scmFileText + "(Parameter.set \'Int_Method \'DuffInt)\n";
+			scmFileText = scmFileText + "(Parameter.set \'Int_Target_Method Int_Targets_Default)\n";
+		}
+		return scmFileText;
+	}
+}
@@ -4,7 +4,6 @@ import javax.swing.*;
 import vidivox.audio.AudioOverlay;
 import vidivox.audio.CommentaryOverlay;
 import vidivox.audio.FileOverlay;
-import vidivox.worker.SkipVideoWorker;
 
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -93,8 +92,6 @@ public class AudioOverlaysDialog extends JDialog {
 		playAudioVideoButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed (ActionEvent actionEvent) {      
-				SkipVideoWorker skipVid = controlsPanel.getSkipVid();
-
 				JButton pauseButton = controlsPanel.getPauseButton();
 				ImageIcon pauseIcon = controlsPanel.getPauseIcon();
 				pauseButton.setIcon(pauseIcon);
@@ -103,11 +100,7 @@ public class AudioOverlaysDialog extends JDialog {
 				videoPlayer.getMediaPlayer().mute(false);
 
 				// Checking if the video is currently forwarding/rewinding and if it is then stopping it from skipping
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				controlsPanel.getTrickPlay().stop();
 
 				// Check through the commentaries to make sure they are all under 100 characters
 				List<CommentaryOverlay> commentaryOverlays = AudioOverlaysDialog.commentaryOverlays;
@@ -13,7 +13,6 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,10 +21,15 @@ import javax.swing.JButton;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import vidivox.audio.AudioOverlay;
-import vidivox.worker.ExportWorker;
+import vidivox.audio.CommentaryOverlay;
+import vidivox.export.ExportJob;
+import vidivox.export.OverlayTrack;
+import vidivox.export.VideoEffects;
+import vidivox.media.MediaOperations;
 
 /**
  * This class is used to create a panel at the bottom of the main frame which allows for the space of buttons
@@ -36,6 +40,11 @@ import vidivox.worker.ExportWorker;
  */
 public class BottomControlsPanel extends JPanel {
 
+	/**
+	 * Length of the start of an opened project whose commentaries must be ready before it is played
+	 */
+	private static final double PLAYABLE_WINDOW_SECONDS = 30;
+
 	private JButton openVideoButton;					// Option for opening a video
 	private JButton openProjectButton;					// Option for opening a project
 	private JButton saveProjectButton;					// Option for saving a project
@@ -50,6 +59,7 @@ public class BottomControlsPanel extends JPanel {
 	private ControlsPanel controlsPanel;				// Reference to ControlsPanel class
 	private VideoEffectsPanel videoEffectsPanel;		// Reference to VideoEffectsPanel class
 	private MainFrame mainFrame;						// Reference to MainFrame class
+	private ExportQueueDialog exportQueueDialog;		// Dialog showing the queued exports, created on the first export
 
 	/**
 	 * This constructor calls the methods to set up the layout and listeners and initializes fields
@@ -361,7 +371,7 @@ public class BottomControlsPanel extends JPanel {
 		String videoPath = null;
 
 		// For when there was no video specified and only comments were saved
-		if (!line.equals("")) {
+		if (line != null && !line.equals("")) {
 			videoPath = line;
 			audioOverlaysDialog.enablePlayAudioVideoButton();
 		}
@@ -378,15 +388,39 @@ public class BottomControlsPanel extends JPanel {
 		}
 
 		this.videoPath = videoPath;
+
+		// Setting the commentary overlays in the class AudioOverlaysDialog which handles them
+		AudioOverlaysDialog.setOverlays(overlays);
+		fileToOpen.close();
+
+		// Getting the file name
 		if (videoPath != null) {
-			videoPlayer.playVideo(videoPath);
+			int index = videoPath.lastIndexOf("/");
+			mainFrame.setVideoName(videoPath.substring(index + 1));
 		}
 
-		//controlsPanel.startAudioPlayers();
+		// Stopping whatever was playing before while the new project gets ready
+		controlsPanel.stopAudioPlayers();
+		videoPlayer.getMediaPlayer().stop();
 
-		// Getting the file name
-		int index = videoPath.lastIndexOf("/");
-		mainFrame.setVideoName(videoPath.substring(index + 1));
+		// The commentaries are being synthesized in order of their start time, so the video is
+		// played as soon as the ones at the start are ready while the rest carry on
+		waitForCommentary(overlays, new Runnable() {
+			@Override
+			public void run() {
+				startProject();
+			}
+		});
+	}
+
+	/**
+	 * Starts playing the project which has just been opened, along with its overlays
+	 */
+	private void startProject() {
+		if (videoPath == null) {
+			return;
+		}
+		videoPlayer.playVideo(videoPath);
 
 		try {
 			Thread.sleep(100);
@@ -398,39 +432,152 @@ public class BottomControlsPanel extends JPanel {
 		if (!videoPlayer.getMediaPlayer().isPlayable()) {
 			JOptionPane.showMessageDialog(null, "ERROR: Video file cannot be found\nPath to video must have changed due to video being moved!", 
 					"Video playback error", JOptionPane.ERROR_MESSAGE);
+			return;
 		}
+		controlsPanel.startAudioPlayers();
+	}
 
-		// Setting the commentary overlays in the class AudioOverlaysDialog which handles them
-		AudioOverlaysDialog.setOverlays(overlays);
-		fileToOpen.close();
+	/**
+	 * Shows the progress of the commentaries of an opened project being synthesized. The project
+	 * is started once every commentary within the first PLAYABLE_WINDOW_SECONDS is ready or has
+	 * failed (or the user stops waiting), and the progress is shown until every commentary is
+	 * settled. The user is told which commentaries could not be synthesized
+	 *
+	 * @param overlays - the overlays of the project
+	 * @param playable - called once the start of the project can be played
+	 */
+	private void waitForCommentary(final List<AudioOverlay> overlays, final Runnable playable) {
+		final List<CommentaryOverlay> commentaries = new ArrayList<>();
+		for (AudioOverlay overlay : overlays) {
+			if (overlay instanceof CommentaryOverlay) {
+				commentaries.add((CommentaryOverlay) overlay);
+			}
+		}
+
+		final ProgressDialog progressDialog = new ProgressDialog();
+		progressDialog.setTitle("Opening project");
+		progressDialog.setTaskTotal(Math.max(1, commentaries.size()));
+		progressDialog.getCancelButton().setText("Don't wait");
+		progressDialog.getCancelButton().setToolTipText("Play now, commentaries are added as they become ready");
+
+		// Checking on the commentaries regularly until they are all ready
+		final boolean[] started = { false };
+		final int[] checks = { 0 };
+		final Timer progressTimer = new Timer(100, null);
+		progressTimer.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				// A failed commentary is settled as it is never going to become ready
+				int ready = 0;
+				List<CommentaryOverlay> failed = new ArrayList<>();
+				boolean windowReady = true;
+				for (CommentaryOverlay commentary : commentaries) {
+					if (commentary.isReady()) {
+						ready++;
+					} else if (commentary.isFailed()) {
+						failed.add(commentary);
+					} else if (commentary.getStartTime() < PLAYABLE_WINDOW_SECONDS) {
+						windowReady = false;
+					}
+				}
+
+				// Starting the project as soon as its beginning can be heard
+				if (windowReady && !started[0]) {
+					started[0] = true;
+					playable.run();
+				}
+
+				if (ready + failed.size() == commentaries.size()) {
+					progressTimer.stop();
+					progressDialog.close();
+
+					// Telling the user which commentaries will stay silent
+					if (!failed.isEmpty()) {
+						StringBuilder message = new StringBuilder("The following commentaries could not be synthesized:");
+						for (CommentaryOverlay commentary : failed) {
+							message.append("\n\"").append(commentary.getText()).append("\" at ")
+									.append(commentary.getStartTime()).append(" seconds");
+						}
+						JOptionPane.showMessageDialog(mainFrame, message.toString(), "Error", JOptionPane.ERROR_MESSAGE);
+					}
+				} else {
+					progressDialog.setTaskProgress(ready);
+					progressDialog.setTaskProgressNote("Synthesizing commentary " + ready + " of " + commentaries.size());
+
+					// Only showing the dialog if the commentaries are not all cached
+					if (++checks[0] == 3) {
+						progressDialog.setLocationRelativeTo(mainFrame);
+						progressDialog.setVisible(true);
+					}
+				}
+			}
+		});
+
+		// Cancelling only stops waiting, the remaining commentaries are still synthesized
+		progressDialog.getCancelButton().addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				progressTimer.stop();
+				progressDialog.close();
+				if (!started[0]) {
+					started[0] = true;
+					playable.run();
+				}
+			}
+		});
+
+		progressTimer.setInitialDelay(0);
+		progressTimer.start();
 	}
 
 	/**
 	 * This method gets the total time of the video being played and sets the total time label and field to that duration
 	 */
 	public void setDuration () {
-		int totalTime = 0;
-		// Process to find the video duration
-		try {
-			Process ffProbeProcess = new ProcessBuilder("/bin/bash", "-c", "ffprobe -i \"" + videoPath + "\" -show_entries format=duration 2>&1 | grep \"duration=\"").start();
-			BufferedReader reader = new BufferedReader(new InputStreamReader(ffProbeProcess.getInputStream()));
-			ffProbeProcess.waitFor();
-			String durationLine = reader.readLine();
-			if (durationLine != null) {
-				totalTime = (int) Float.parseFloat(durationLine.split("=")[1])*1000;
+		// Getting the video duration in the background, ignoring it if another video was opened since
+		final String path = videoPath;
+		MediaOperations.getInstance().getDuration(path, new MediaOperations.Callback<Double>() {
+			@Override
+			public void done(Double duration) {
+				if (path.equals(videoPath)) {
+					int totalTime = (int) (duration * 1000);
+					controlsPanel.setTotalTime(controlsPanel.calculateTime(totalTime),totalTime);
+				}
 			}
-		} catch (InterruptedException | IOException e1) {
-			e1.printStackTrace();
-			System.err.println("Failed to get video duration");
-		}
-		controlsPanel.setTotalTime(controlsPanel.calculateTime(totalTime),totalTime);
+
+			@Override
+			public void failed(Exception e) {
+				System.err.println("Failed to get video duration");
+			}
+		});
 	}
 
 	/**
-	 * Merges the video and audio tracks into one file using ffmpeg by overlaying them
+	 * Merges the video and audio tracks into one file using ffmpeg by overlaying them. The export
+	 * is added to the ExportQueue, which runs it once there is a free slot
 	 */
 	private void exportProject(final File file) throws InterruptedException, IOException {
-		ExportWorker exportWorker = new ExportWorker(file, this, videoPath);
-		exportWorker.execute();
+		if (exportQueueDialog == null) {
+			exportQueueDialog = new ExportQueueDialog();
+			exportQueueDialog.setLocationRelativeTo(mainFrame);
+		}
+		// Taking a snapshot of the overlays so they can still be edited while exporting
+		ExportJob job = new ExportJob(videoPath, OverlayTrack.of(AudioOverlaysDialog.getOverlays()), file,
+				ExportJob.Priority.NORMAL);
+
+		// Asking whether the video effects should be applied, as the video then has to be encoded again
+		VideoEffects effects = videoEffectsPanel.getEffects();
+		if (!effects.isDefault()) {
+			int choice = JOptionPane.showConfirmDialog(mainFrame, "Apply the video effects to the exported video?\n"
+					+ "The video will take longer to export as it has to be encoded again.", "Video Effects",
+					JOptionPane.YES_NO_CANCEL_OPTION);
+			if (choice == JOptionPane.CANCEL_OPTION || choice == JOptionPane.CLOSED_OPTION) {
+				return;
+			}
+			if (choice == JOptionPane.YES_OPTION) {
+				job.setEffects(effects);
+			}
+		}
+		exportQueueDialog.submit(job);
 	}
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.event.MouseMotionAdapter;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
@@ -22,9 +23,11 @@ import javax.swing.event.ChangeListener;
 import javax.swing.plaf.basic.BasicSliderUI;
 
 import vidivox.Main;
+import vidivox.audio.AudioMixer;
 import vidivox.audio.AudioOverlay;
-import vidivox.worker.AudioPlayWorker;
-import vidivox.worker.SkipVideoWorker;
+import vidivox.audio.DriftCorrector;
+import vidivox.audio.MediaClock;
+import vidivox.media.KeyframeIndex;
 
 /**
  * This class contains the components which allow the user to perform the basic tasks
@@ -41,10 +44,14 @@ public class ControlsPanel extends JPanel {
 	/**
 	 * Declaring fields to be used within this class and the project
 	 */
-	private ArrayList<AudioPlayWorker> audioPlayWorkers = new ArrayList<AudioPlayWorker>(); // List of audio workers
+	private AudioMixer audioMixer = new AudioMixer(); // Mixer playing all of the overlays together
+	private DriftCorrector driftCorrector;			// Loop keeping the mixer in time with the video
 	private ControlsPanel controlsPanel = this;		// Reference to the only instance of this class
 	private VideoPlayerComponent videoPlayer;		// Reference to the video player component 
-	private SkipVideoWorker skipVid = null;			// Reference to instance of a worker class to forward/rewind
+	private TrickPlay trickPlay = new TrickPlay(this);	// Fast forwards and rewinds the video
+	private PlaybackPositionUpdater positionUpdater;	// Keeps the slider and time label up to date
+	private SeekScheduler seekScheduler;				// Seeks the video as the slider is dragged
+	private SeekPreview seekPreview;					// Preview shown above the slider on hover
 	private JLabel currentTimeLabel;				// Label showing the time the video is currently at
 	private JLabel totalTimeLabel;					// Label showing the total time of the video
 	private JSlider seekSlider;						// Slider showing progress of video and allowing user to set
@@ -76,6 +83,25 @@ public class ControlsPanel extends JPanel {
 	public ControlsPanel(VideoPlayerComponent videoPlayer, AudioOverlaysDialog dialog) {
 		this.audioOverlaysDialog = dialog;
 		this.videoPlayer = videoPlayer;
+		this.seekScheduler = new SeekScheduler(videoPlayer);
+		MediaClock mediaClock = new MediaClock() {
+			@Override
+			public long getTime() {
+				return ControlsPanel.this.videoPlayer.getMediaPlayer().getTime();
+			}
+
+			@Override
+			public boolean isPlaying() {
+				return ControlsPanel.this.videoPlayer.getMediaPlayer().isPlaying();
+			}
+
+			@Override
+			public float getRate() {
+				return ControlsPanel.this.videoPlayer.getMediaPlayer().getRate();
+			}
+		};
+		this.driftCorrector = new DriftCorrector(audioMixer, mediaClock);
+		audioMixer.setMediaClock(mediaClock);
 		setupLayout();
 		setupListeners();
 	}
@@ -298,11 +324,7 @@ public class ControlsPanel extends JPanel {
 				videoPlayer.getMediaPlayer().mute(false);
 				// Checking if the video is currently forwarding/rewinding and
 				// stopping this process if it is
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.stop();
 
 				// Checking current state of video
 				if (videoPlayer.getMediaPlayer().isPlaying()) {
@@ -329,12 +351,13 @@ public class ControlsPanel extends JPanel {
 				// Updating the video to play from where the user dragged the 
 				// slider to and updating the current time label accordingly
 				if (sliderCanMove) {
-					// Updating current time
-					long currentTime = videoPlayer.getMediaPlayer().getTime();
+					// Updating current time to where the slider is
+					long currentTime = seekSlider.getValue();
 					setCurrentTime(calculateTime(currentTime), currentTime);
 
-					// Setting the position of the video to that of the seek slider
-					videoPlayer.getMediaPlayer().setTime(seekSlider.getValue());
+					// Asking for the video to follow the slider, only the latest position being
+					// seeked to and only to the nearest keyframe while dragging
+					seekScheduler.seek(currentTime, false);
 				}
 			}
 		});
@@ -348,9 +371,19 @@ public class ControlsPanel extends JPanel {
 			@Override
 			public void mousePressed(MouseEvent arg0) {
 				sliderCanMove = true;
-				// Mute the audio when the slider is being moved
+				seekScheduler.prepare();
+				// Mute the audio when the slider is being moved, the overlays keep their
+				// place in the mixer and are only silenced until the slider is released
 				videoPlayer.getMediaPlayer().mute(true);
-				stopAudioPlayers();
+				holdAudioPlayers();
+			}
+
+			// Hiding the preview when the mouse leaves the slider
+			@Override
+			public void mouseExited(MouseEvent e) {
+				if (!sliderCanMove) {
+					seekPreview.hide();
+				}
 			}
 
 			// Setting the sliderCanMove field to false when the user releases the click from the slider so that the state 
@@ -361,14 +394,38 @@ public class ControlsPanel extends JPanel {
 				// Getting mouse click location and setting seek bar to that position
 				// so that video forwards according to where the user clicked
 				final BasicSliderUI ui = (BasicSliderUI) seekSlider.getUI();
-				seekSlider.setValue(ui.valueForXPosition(e.getX()));
 				sliderCanMove = false;
+				if (!seekSlider.contains(e.getPoint())) {
+					seekPreview.hide();
+				}
+				seekSlider.setValue(ui.valueForXPosition(e.getX()));
+				setCurrentTime(calculateTime(seekSlider.getValue()), seekSlider.getValue());
 
-				// Unmute the audio when the seek slider is released
-				videoPlayer.getMediaPlayer().mute(false);
-				if(videoPlayer.getMediaPlayer().isPlaying()){
-					startAudioPlayers();
+				// Making one precise seek to where the slider was released
+				seekScheduler.seek(seekSlider.getValue(), true);
+				if (positionUpdater != null) {
+					positionUpdater.seeking(seekSlider.getValue());
 				}
+
+				// Unmute the audio when the seek slider is released and move the overlays
+				// to where the slider was released
+				videoPlayer.getMediaPlayer().mute(false);
+				updateAudioPlayers(seekSlider.getValue());
+			}
+		});
+
+		// Showing a preview of the video above the slider where the mouse is, or where the
+		// video is being seeked to while the slider is dragged
+		seekPreview = new SeekPreview(seekSlider, this);
+		seekSlider.addMouseMotionListener(new MouseMotionAdapter() {
+			@Override
+			public void mouseMoved(MouseEvent e) {
+				showSeekPreview(e.getX());
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				showSeekPreview(e.getX());
 			}
 		});
 
@@ -379,11 +436,7 @@ public class ControlsPanel extends JPanel {
 				videoPlayer.getMediaPlayer().mute(false);
 
 				// Checking if the video is currently forwarding/rewinding and stopping this process if it is
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.stop();
 
 				// Stopping the audio players
 				stopAudioPlayers();
@@ -415,11 +468,7 @@ public class ControlsPanel extends JPanel {
 
 				// Checking if the video is currently forwarding/rewinding and
 				// stopping this process if it is
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.stop();
 
 				// Stopping the audio players
 				stopAudioPlayers();
@@ -433,64 +482,21 @@ public class ControlsPanel extends JPanel {
 			}
 		});
 
-		// Adding action listener to the fast forward button to allow the user to
-		// fast forward the video when the button is clicked on
+		// Adding action listener to the fast forward button to allow the user to fast forward
+		// the video, each click moving to the next speed and the last one back to normal
 		fastForwardButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-
-				// Checking if there is no already running skipping function
-				if (skipVid == null) {
-					stopAudioPlayers();
-					videoPlayer.getMediaPlayer().mute(true);
-
-					// Instantiating new SkipVideoWorker to forward the video
-					// and executing the thread to start the skipping
-					skipVid =  new SkipVideoWorker(videoPlayer, controlsPanel);
-					skipVid.setSkipValue(1000);
-					skipVid.setIsSkipping(true);
-					skipVid.execute();
-
-				} else {
-					// If there is an already running skipping function then stopping it
-					if(videoPlayer.getMediaPlayer().isPlaying()){
-						startAudioPlayers();
-					}
-					videoPlayer.getMediaPlayer().mute(false);
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.fastForward();
 			}
 		});
 
-		// Adding listener to the rewind button to allow the user to rewind the video
+		// Adding listener to the rewind button to allow the user to rewind the video, each click
+		// moving to the next speed and the last one back to normal
 		rewindButton.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-
-				// Checking if the video is already forwarding or rewinding
-				if (skipVid == null) {
-					// If the video is not currently forwarding/rewinding then muting
-					// the audio of the video and starting process to rewind the video
-					stopAudioPlayers();
-					videoPlayer.getMediaPlayer().mute(true);
-					skipVid = new SkipVideoWorker(videoPlayer, controlsPanel);
-					skipVid.setSkipValue(-1000);
-					skipVid.setIsSkipping(true);
-					skipVid.execute();
-
-				} else {
-					// If the video is skipping then the following will un-mute the video
-					// and stop it from skipping
-					if(videoPlayer.getMediaPlayer().isPlaying()){
-						startAudioPlayers();
-					}
-					videoPlayer.getMediaPlayer().mute(false);
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.rewind();
 			}
 		});
 
@@ -503,16 +509,13 @@ public class ControlsPanel extends JPanel {
 				videoPlayer.getMediaPlayer().mute(false);
 
 				// Checking if the video is being forwarded or is rewinding and stopping that process if it is
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.stop();
 
 				// Skipping the video ahead and updating the audio
+				long target = videoPlayer.getMediaPlayer().getTime() + 10000;
 				videoPlayer.getMediaPlayer().skip(10000);
 				seekSlider.setValue(seekSlider.getValue()+10000);
-				updateAudioPlayers();
+				updateAudioPlayers(target);
 			}
 		});
 
@@ -524,15 +527,12 @@ public class ControlsPanel extends JPanel {
 				videoPlayer.getMediaPlayer().mute(false);
 
 				// Checking if the video is currently forwarding/rewinding and stopping the process if it is
-				if (skipVid != null) {
-					skipVid.setIsSkipping(false);
-					skipVid.cancel(true);
-					skipVid = null;
-				}
+				trickPlay.stop();
 				// RSkipping backwards by a set amount and updating the audio players
+				long target = Math.max(0, videoPlayer.getMediaPlayer().getTime() - 10000);
 				videoPlayer.getMediaPlayer().skip(-10000);
 				seekSlider.setValue(seekSlider.getValue()-10000);
-				updateAudioPlayers();
+				updateAudioPlayers(target);
 			}
 		});
 
@@ -572,19 +572,41 @@ public class ControlsPanel extends JPanel {
 	 * Plays all of the overlaid audio tracks
 	 */
 	public void startAudioPlayers(){
+		startAudioPlayers(videoPlayer.getMediaPlayer().getTime());
+	}
+
+	/**
+	 * Plays all of the overlaid audio tracks from the given time of the video
+	 *
+	 * @param time - time of the video in milliseconds
+	 */
+	public void startAudioPlayers(long time){
 
 		stopAudioPlayers();
 
+		// Only play the overlay tracks with "preview" ticked
+		List<AudioOverlay> previewedOverlays = new ArrayList<>();
 		for(AudioOverlay overlay: AudioOverlaysDialog.getOverlays()){
-			// Only play the overlay tracks with "preview" ticked
 			if(overlay.isShowingPreview()) {
-				long currentPositionMillis = videoPlayer.getMediaPlayer().getTime();
-				double currentPositionSeconds = ((double) currentPositionMillis) / 1000;
-				AudioPlayWorker player = new AudioPlayWorker(overlay, currentPositionSeconds);
-				player.execute();
-				audioPlayWorkers.add(player);
+				previewedOverlays.add(overlay);
 			}
 		}
+
+		// Mixing all of them through the one mixer from the current position of the video
+		audioMixer.play(previewedOverlays, time);
+		driftCorrector.start();
+	}
+
+	/**
+	 * Adds an overlay to the overlaid audio tracks if they are playing, e.g. once its audio has
+	 * been synthesized after playback started
+	 *
+	 * @param overlay - the overlay whose audio is now available
+	 */
+	public void addAudioPlayer(AudioOverlay overlay) {
+		if (audioMixer.isPlaying() && overlay.isShowingPreview()) {
+			audioMixer.add(overlay);
+		}
 	}
 
 	/**
@@ -600,10 +622,8 @@ public class ControlsPanel extends JPanel {
 		}
 		
 		// Stopping all other audio playing
-		for(AudioPlayWorker player : audioPlayWorkers){
-			player.kill();
-		}
-		audioPlayWorkers = new ArrayList<>();
+		driftCorrector.stop();
+		audioMixer.stop();
 	}
 	
 	public void toggleControlsPanel(boolean bool) {
@@ -617,15 +637,51 @@ public class ControlsPanel extends JPanel {
 	}
 
 	/**
-	 * Updates the currently playing audio tracks to synchronize them with the video
+	 * Updates the currently playing audio tracks to synchronize them with the video after it has
+	 * been moved to a new time. Playing overlays are moved in place by the mixer, which starts the
+	 * ones that become audible and drops the ones that stop being audible, so nothing is restarted
+	 *
+	 * @param time - the time of the video in milliseconds the overlays should continue from
 	 */
-	public void updateAudioPlayers() {
-		stopAudioPlayers();
-		if(videoPlayer.getMediaPlayer().isPlaying()){
-			startAudioPlayers();
+	public void updateAudioPlayers(long time) {
+		if (audioMixer.isPlaying()) {
+			audioMixer.reposition(time);
+			audioMixer.setHeld(false);
+			driftCorrector.start();
+		} else if (videoPlayer.getMediaPlayer().isPlaying()) {
+			startAudioPlayers(time);
 		}
 	}
 
+	/**
+	 * Shows the preview of the video for a position of the seek slider. While the slider is
+	 * dragged the preview is of the keyframe the video is actually seeked to
+	 *
+	 * @param x - position on the slider
+	 */
+	private void showSeekPreview(int x) {
+		if (!seekSlider.isEnabled() || seekSlider.getMaximum() <= 0) {
+			return;
+		}
+		long time = ((BasicSliderUI) seekSlider.getUI()).valueForXPosition(x);
+		String videoPath = videoPlayer.getVideoPath();
+		if (sliderCanMove && videoPath != null) {
+			KeyframeIndex keyframes = KeyframeIndex.getIfLoaded(videoPath);
+			if (keyframes != null) {
+				time = keyframes.nearest(time);
+			}
+		}
+		seekPreview.show(time, x);
+	}
+
+	/**
+	 * Silences the overlays without stopping them, e.g. while the user drags the seek slider
+	 */
+	private void holdAudioPlayers() {
+		driftCorrector.stop();
+		audioMixer.setHeld(true);
+	}
+
 	/**
 	 * Method which sets the total time variable as well as the label in the GUI
 	 */
@@ -645,14 +701,30 @@ public class ControlsPanel extends JPanel {
 	/**
 	 * Defining getters for use of variables in other classes
 	 */
-	public SkipVideoWorker getSkipVid() {
-		return skipVid;
+	public TrickPlay getTrickPlay() {
+		return trickPlay;
+	}
+
+	public PlaybackPositionUpdater getPositionUpdater() {
+		return positionUpdater;
+	}
+
+	public void setPositionUpdater(PlaybackPositionUpdater positionUpdater) {
+		this.positionUpdater = positionUpdater;
 	}
 
 	public JButton getPauseButton() {
 		return pauseButton;
 	}
 
+	public AudioMixer getAudioMixer() {
+		return audioMixer;
+	}
+
+	public DriftCorrector getDriftCorrector() {
+		return driftCorrector;
+	}
+
 	public ImageIcon getPlayIcon() {
 		return playIcon;
 	}
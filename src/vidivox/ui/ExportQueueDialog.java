@@ -0,0 +1,343 @@
+package vidivox.ui;
+import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import javax.swing.table.AbstractTableModel;
+
+import vidivox.export.ExportJob;
+import vidivox.export.ExportQueue;
+
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is the class for the Dialog which shows every export in the ExportQueue with its progress,
+ * throughput and time left. It allows users to pause, resume and cancel exports, change their
+ * priority and how many run at once, and to queue saved projects for export
+ *
+ */
+@SuppressWarnings("serial")
+public class ExportQueueDialog extends JDialog {
+
+	/**
+	 * Declaring fields to be used globally within class
+	 */
+	private ExportQueue queue = ExportQueue.getInstance();		// Queue shown by the dialog
+	private JobTableModel tableModel;							// Model of the table of jobs
+	private JTable jobTable;									// Table showing a row per job
+	private JButton addProjectButton;							// Button to queue a saved project
+	private JButton pauseButton;								// Button to pause the selected jobs
+	private JButton resumeButton;								// Button to resume the selected jobs
+	private JButton cancelButton;								// Button to cancel the selected jobs
+	private JComboBox<ExportJob.Priority> priorityComboBox;		// Priority given to the selected jobs
+	private JSpinner concurrencySpinner;						// Number of exports run at once
+	private JButton clearButton;								// Button to remove finished jobs
+	private boolean refreshPending = false;						// Whether a refresh of the table is waiting
+	private Map<ExportJob, ExportJob.State> shownStates = new HashMap<>();	// Last state shown of every job
+
+	/**
+	 * Initializes the Dialog with layout and listeners
+	 */
+	public ExportQueueDialog() {
+		super((Dialog) null);
+		setTitle("Exports");
+		setupLayout();
+		setupListeners();
+		setMinimumSize(new Dimension(800, 300));
+		pack();
+	}
+
+	/**
+	 * Method called to set up the layout of the dialog using the grid bag layout
+	 */
+	private void setupLayout() {
+		Container contentPane = getContentPane();
+		contentPane.setLayout(new GridBagLayout());
+		GridBagConstraints gbc = new GridBagConstraints();
+		gbc.insets = new Insets(5,5,5,5);
+
+		// Adding the table of jobs, taking up all the space left
+		tableModel = new JobTableModel();
+		jobTable = new JTable(tableModel);
+		jobTable.getColumnModel().getColumn(0).setPreferredWidth(250);
+		jobTable.getColumnModel().getColumn(6).setPreferredWidth(300);
+		gbc.gridx = 0;
+		gbc.gridy = 0;
+		gbc.gridwidth = 8;
+		gbc.weightx = 1.0f;
+		gbc.weighty = 1.0f;
+		gbc.fill = GridBagConstraints.BOTH;
+		contentPane.add(new JScrollPane(jobTable), gbc);
+
+		// Adding the buttons controlling the selected jobs below it
+		gbc.gridy = 1;
+		gbc.gridwidth = 1;
+		gbc.weightx = 0.0f;
+		gbc.weighty = 0.0f;
+		gbc.fill = GridBagConstraints.NONE;
+		addProjectButton = new JButton("Add Project...");
+		addProjectButton.setToolTipText("Queue a saved project to be exported");
+		contentPane.add(addProjectButton, gbc);
+
+		pauseButton = new JButton("Pause");
+		pauseButton.setToolTipText("Pause the selected exports, they carry on from the audio already mixed when resumed");
+		gbc.gridx++;
+		contentPane.add(pauseButton, gbc);
+
+		resumeButton = new JButton("Resume");
+		resumeButton.setToolTipText("Resume the selected exports, or try failed ones again");
+		gbc.gridx++;
+		contentPane.add(resumeButton, gbc);
+
+		cancelButton = new JButton("Cancel");
+		cancelButton.setToolTipText("Cancel the selected exports");
+		gbc.gridx++;
+		contentPane.add(cancelButton, gbc);
+
+		priorityComboBox = new JComboBox<ExportJob.Priority>(ExportJob.Priority.values());
+		priorityComboBox.setSelectedItem(ExportJob.Priority.NORMAL);
+		priorityComboBox.setToolTipText("Priority of the selected exports, higher priority exports start first");
+		gbc.gridx++;
+		contentPane.add(priorityComboBox, gbc);
+
+		clearButton = new JButton("Clear Finished");
+		gbc.gridx++;
+		contentPane.add(clearButton, gbc);
+
+		gbc.gridx++;
+		gbc.weightx = 1.0f;
+		gbc.anchor = GridBagConstraints.EAST;
+		contentPane.add(new JLabel("Exports at once: "), gbc);
+
+		// Allowing up to one export per core, or more if more were asked for with -Dvidivox.exportConcurrency
+		int maxRunning = queue.getMaxRunning();
+		concurrencySpinner = new JSpinner(new SpinnerNumberModel(maxRunning, 1,
+				Math.max(Runtime.getRuntime().availableProcessors(), maxRunning), 1));
+		gbc.gridx++;
+		gbc.weightx = 0.0f;
+		contentPane.add(concurrencySpinner, gbc);
+	}
+
+	/**
+	 * Sets up the listeners to respond to user input and to changes of the jobs
+	 */
+	private void setupListeners() {
+		// Refreshing the table whenever a job changes, coalescing changes made at the same time
+		queue.addListener(new ExportQueue.Listener() {
+			@Override
+			public void jobChanged(ExportJob job) {
+				synchronized (ExportQueueDialog.this) {
+					if (refreshPending) {
+						return;
+					}
+					refreshPending = true;
+				}
+				SwingUtilities.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						synchronized (ExportQueueDialog.this) {
+							refreshPending = false;
+						}
+						refresh();
+					}
+				});
+			}
+		});
+
+		addProjectButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				addProject();
+			}
+		});
+
+		pauseButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				for (ExportJob job : getSelectedJobs()) {
+					queue.pause(job);
+				}
+			}
+		});
+
+		resumeButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				for (ExportJob job : getSelectedJobs()) {
+					queue.resume(job);
+				}
+			}
+		});
+
+		cancelButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				for (ExportJob job : getSelectedJobs()) {
+					queue.cancel(job);
+				}
+			}
+		});
+
+		priorityComboBox.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				for (ExportJob job : getSelectedJobs()) {
+					queue.setPriority(job, (ExportJob.Priority) priorityComboBox.getSelectedItem());
+				}
+			}
+		});
+
+		clearButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				queue.removeFinished();
+				refresh();
+			}
+		});
+
+		concurrencySpinner.addChangeListener(new javax.swing.event.ChangeListener() {
+			@Override
+			public void stateChanged(javax.swing.event.ChangeEvent e) {
+				queue.setMaxRunning((Integer) concurrencySpinner.getValue());
+			}
+		});
+	}
+
+	/**
+	 * Adds an export of the current project to the queue and shows the dialog
+	 *
+	 * @param job - the export to add
+	 */
+	public void submit(ExportJob job) {
+		queue.submit(job);
+		setVisible(true);
+		toFront();
+	}
+
+	/**
+	 * Lets the user choose a saved project and where to export it, then queues it
+	 */
+	private void addProject() {
+		JFileChooser projectChooser = new JFileChooser();
+		projectChooser.setAcceptAllFileFilterUsed(false);
+		projectChooser.addChoosableFileFilter(new FileNameExtensionFilter("Project files", "vvproject"));
+		if (projectChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		JFileChooser outputChooser = new JFileChooser();
+		outputChooser.setDialogTitle("Export " + projectChooser.getSelectedFile().getName() + " to");
+		if (outputChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		queue.submit(new ExportJob(projectChooser.getSelectedFile(), outputChooser.getSelectedFile(),
+				(ExportJob.Priority) priorityComboBox.getSelectedItem()));
+	}
+
+	/**
+	 * Gets the jobs of the selected rows
+	 */
+	private List<ExportJob> getSelectedJobs() {
+		List<ExportJob> selected = new ArrayList<>();
+		for (int row : jobTable.getSelectedRows()) {
+			selected.add(tableModel.getJob(jobTable.convertRowIndexToModel(row)));
+		}
+		return selected;
+	}
+
+	/**
+	 * Shows the latest state of the jobs, keeping the selection, and tells the user when an
+	 * export finishes or fails
+	 */
+	private void refresh() {
+		List<ExportJob> selected = getSelectedJobs();
+		tableModel.setJobs(queue.getJobs());
+		for (ExportJob job : selected) {
+			int row = tableModel.indexOf(job);
+			if (row >= 0) {
+				jobTable.addRowSelectionInterval(row, row);
+			}
+		}
+
+		for (ExportJob job : tableModel.jobs) {
+			ExportJob.State previous = shownStates.put(job, job.getState());
+			if (previous == job.getState()) {
+				continue;
+			}
+			if (job.getState() == ExportJob.State.DONE) {
+				JOptionPane.showMessageDialog(this, "Sucessfully exported project to " + job.getOutput().getAbsolutePath(),
+						"Success!", JOptionPane.INFORMATION_MESSAGE);
+			} else if (job.getState() == ExportJob.State.FAILED) {
+				JOptionPane.showMessageDialog(this, "Export of " + job.getName() + " failed\n" + job.getDescription(),
+						"Error", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	/**
+	 * This class is the model of the table of jobs, one row per job
+	 */
+	@SuppressWarnings("serial")
+	private static class JobTableModel extends AbstractTableModel {
+
+		private static final String[] COLUMNS = { "Export", "Priority", "State", "Progress", "Speed", "Time Left", "Status" };
+		private List<ExportJob> jobs = new ArrayList<>();
+
+		void setJobs(List<ExportJob> jobs) {
+			this.jobs = jobs;
+			fireTableDataChanged();
+		}
+
+		ExportJob getJob(int row) {
+			return jobs.get(row);
+		}
+
+		int indexOf(ExportJob job) {
+			return jobs.indexOf(job);
+		}
+
+		@Override
+		public int getRowCount() {
+			return jobs.size();
+		}
+
+		@Override
+		public int getColumnCount() {
+			return COLUMNS.length;
+		}
+
+		@Override
+		public String getColumnName(int column) {
+			return COLUMNS[column];
+		}
+
+		@Override
+		public Object getValueAt(int row, int column) {
+			ExportJob job = jobs.get(row);
+			switch (column) {
+			case 0:
+				return job.getName();
+			case 1:
+				return job.getPriority();
+			case 2:
+				return job.getState();
+			case 3:
+				return job.getPercent() + "%";
+			case 4:
+				return (job.getSpeed() > 0) ? String.format("%.1fx", job.getSpeed()) : "";
+			case 5:
+				if (job.getRemainingSeconds() < 0) {
+					return "";
+				}
+				long seconds = Math.round(job.getRemainingSeconds());
+				return String.format("%d:%02d", seconds / 60, seconds % 60);
+			default:
+				return job.getDescription();
+			}
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package vidivox.ui;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
+
+/**
+ * This class keeps the seek slider, the time label and the play/pause button of the ControlsPanel
+ * up to date with the video. It is driven by the events of the vlcj media player rather than by
+ * polling it: while the video plays, a Swing Timer moves the slider smoothly by extrapolating from
+ * the last time reported by vlc, and while the video is paused, stopped or not loaded the timer is
+ * stopped so that no work is done at all. A time reported while paused (e.g. after a seek) is
+ * shown once
+ */
+public class PlaybackPositionUpdater extends MediaPlayerEventAdapter {
+
+	/**
+	 * Limits on how often the slider is moved while playing. The interval is chosen so the slider
+	 * moves about a pixel per tick, within these bounds
+	 */
+	private static final int MIN_INTERVAL_MILLIS = 33;		// About 30 updates a second
+	private static final int MAX_INTERVAL_MILLIS = 250;
+
+	/**
+	 * Furthest the shown time is extrapolated past the last time reported by vlc, so that the
+	 * slider stops rather than runs on if vlc stops reporting (e.g. while buffering)
+	 */
+	private static final long MAX_EXTRAPOLATION_MILLIS = 1000;
+
+	/**
+	 * Fields used to update the controls
+	 */
+	private final ControlsPanel controlsPanel;							// Panel holding the controls
+	private final Timer refreshTimer;									// Timer moving the slider while playing
+	private final AtomicBoolean refreshPending = new AtomicBoolean();	// Whether a single refresh has been posted
+	private volatile long reportedTime = 0;								// Last time of the video reported by vlc
+	private volatile long reportedNanos = System.nanoTime();			// System time it was reported at
+	private volatile boolean playing = false;							// Whether the video is playing
+	private volatile float rate = 1.0f;									// Rate the video is playing at
+
+	/**
+	 * Constructor for the updater of a controls panel, which starts listening to its video player
+	 *
+	 * @param controlsPanel - the panel holding the controls to update
+	 */
+	public PlaybackPositionUpdater(ControlsPanel controlsPanel) {
+		this.controlsPanel = controlsPanel;
+		refreshTimer = new Timer(MIN_INTERVAL_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				refresh();
+			}
+		});
+		refreshTimer.setCoalesce(true);
+		controlsPanel.getVideoPlayer().getMediaPlayer().addMediaPlayerEventListener(this);
+	}
+
+	/**
+	 * Sets the rate the video is playing at, used to extrapolate its time between the events
+	 *
+	 * @param rate - the playback rate, 1.0 being normal speed
+	 */
+	public void setRate(float rate) {
+		this.rate = rate;
+	}
+
+	/**
+	 * Shows a time the video has been asked to seek to straight away, instead of the time before
+	 * the seek, until vlc reports the new time
+	 *
+	 * @param timeMillis - the time being seeked to
+	 */
+	public void seeking(long timeMillis) {
+		reportedTime = timeMillis;
+		reportedNanos = System.nanoTime();
+	}
+
+	/**
+	 * The events below are called on a thread of vlcj, which must not call back into the media
+	 * player, so they only record what happened and hand the work to the event dispatch thread
+	 */
+	@Override
+	public void timeChanged(MediaPlayer mediaPlayer, long newTime) {
+		reportedTime = newTime;
+		reportedNanos = System.nanoTime();
+		// The timer shows the time while playing, otherwise it is shown once
+		if (!playing) {
+			postRefresh();
+		}
+	}
+
+	@Override
+	public void playing(MediaPlayer mediaPlayer) {
+		reportedNanos = System.nanoTime();
+		playing = true;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				controlsPanel.getPauseButton().setIcon(controlsPanel.getPauseIcon());
+				startTimer();
+			}
+		});
+	}
+
+	@Override
+	public void paused(MediaPlayer mediaPlayer) {
+		// Keeping the slider where it was extrapolated to rather than jumping back to the last event
+		reportedTime = getDisplayTime();
+		stopped(false);
+	}
+
+	@Override
+	public void stopped(MediaPlayer mediaPlayer) {
+		// A stopped video starts again from the beginning
+		reportedTime = 0;
+		stopped(false);
+	}
+
+	@Override
+	public void finished(MediaPlayer mediaPlayer) {
+		stopped(true);
+	}
+
+	@Override
+	public void error(MediaPlayer mediaPlayer) {
+		stopped(false);
+	}
+
+	/**
+	 * Stops the timer and shows the video as not playing
+	 *
+	 * @param ended - whether the video played to its end, which also stops the overlays
+	 */
+	private void stopped(final boolean ended) {
+		playing = false;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				refreshTimer.stop();
+				controlsPanel.getPauseButton().setIcon(controlsPanel.getPlayIcon());
+				if (ended) {
+					controlsPanel.stopAudioPlayers();
+				}
+				refresh();
+			}
+		});
+	}
+
+	/**
+	 * Posts a single refresh to the event dispatch thread, unless one is already waiting
+	 */
+	private void postRefresh() {
+		if (refreshPending.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					refreshPending.set(false);
+					refresh();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Starts the timer, choosing its interval so that each tick moves the slider about a pixel
+	 */
+	private void startTimer() {
+		int width = Math.max(1, controlsPanel.getSeekSlider().getWidth());
+		long millisPerPixel = (long) controlsPanel.getTotalTime() / width;
+		int interval = (int) Math.max(MIN_INTERVAL_MILLIS, Math.min(MAX_INTERVAL_MILLIS, millisPerPixel / Math.max(0.1f, Math.abs(rate))));
+		refreshTimer.setDelay(interval);
+		refreshTimer.setInitialDelay(0);
+		refreshTimer.restart();
+	}
+
+	/**
+	 * Shows the current time of the video on the slider and the time label, unless the user is
+	 * dragging the slider
+	 */
+	private void refresh() {
+		if (controlsPanel.getSliderStatus()) {
+			return;
+		}
+		int time = (int) getDisplayTime();
+		controlsPanel.getSeekSlider().setValue(time);
+		controlsPanel.setCurrentTime(controlsPanel.calculateTime(time), time);
+	}
+
+	/**
+	 * Gets the time to show, moving on from the last reported time at the playback rate while
+	 * the video is playing
+	 */
+	private long getDisplayTime() {
+		long time = reportedTime;
+		if (!playing) {
+			return time;
+		}
+		long elapsedMillis = (System.nanoTime() - reportedNanos) / 1000000;
+		long extrapolated = Math.round(Math.min(elapsedMillis, MAX_EXTRAPOLATION_MILLIS) * rate);
+		long end = (long) controlsPanel.getTotalTime();
+		return (end > 0) ? Math.max(0, Math.min(end, time + extrapolated)) : Math.max(0, time + extrapolated);
+	}
+}
@@ -82,6 +82,14 @@ public class ProgressDialog extends JDialog {
         taskProgressBar.setMaximum(total);
     }
     
+    /**
+     * Method to set whether the task bar only shows that something is happening, for when the
+     * progress is not known yet
+     */
+    public void setTaskIndeterminate(boolean indeterminate) {
+        taskProgressBar.setIndeterminate(indeterminate);
+    }
+
     /**
      * Method to set the actual progress of the task specific bar
      * @param progress
@@ -99,6 +107,13 @@ public class ProgressDialog extends JDialog {
         taskProgressLabel.setText(note);
     }
 
+    /**
+     * Getter for the cancel button so the task being shown can decide what cancelling does
+     */
+    public JButton getCancelButton() {
+        return cancelButton;
+    }
+
     /**
      * Method called to close the progress dialog instance
      */
@@ -0,0 +1,117 @@
+package vidivox.ui;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+
+import javax.swing.BorderFactory;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JSlider;
+import javax.swing.JWindow;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import vidivox.media.ThumbnailIndex;
+
+/**
+ * This class shows a small preview of the video above the seek slider while the mouse hovers
+ * over it or drags it. The thumbnail comes from the ThumbnailIndex of the video, so showing it
+ * never decodes the video, and only the time is shown until the video has been indexed
+ */
+public class SeekPreview {
+
+	/**
+	 * Gap in pixels between the preview and the slider
+	 */
+	private static final int GAP = 4;
+
+	/**
+	 * Fields used to show the preview
+	 */
+	private final JSlider slider;			// Slider the preview is shown above
+	private final ControlsPanel controls;	// Controls giving the video and the time format
+	private JWindow window;					// Window holding the preview, made when first shown
+	private JLabel imageLabel;				// Label showing the thumbnail
+	private JLabel timeLabel;				// Label showing the time
+	private long shownThumbnail = -2;		// Time of the thumbnail being shown, -1 if none
+
+	/**
+	 * Constructor for the preview of a slider
+	 *
+	 * @param slider - the seek slider
+	 * @param controls - the panel the slider is in
+	 */
+	public SeekPreview(JSlider slider, ControlsPanel controls) {
+		this.slider = slider;
+		this.controls = controls;
+	}
+
+	/**
+	 * Shows the preview for a time of the video above a position of the slider
+	 *
+	 * @param timeMillis - time of the video in milliseconds
+	 * @param x - position on the slider the preview is centred on
+	 */
+	public void show(long timeMillis, int x) {
+		String videoPath = controls.getVideoPlayer().getVideoPath();
+		if (videoPath == null || !slider.isShowing()) {
+			hide();
+			return;
+		}
+		if (window == null) {
+			createWindow();
+		}
+
+		// Only changing the image when the hover moves onto another thumbnail
+		ThumbnailIndex index = ThumbnailIndex.getIfLoaded(videoPath);
+		long thumbnailTime = (index != null) ? index.getThumbnailTime(timeMillis) : -1;
+		if (thumbnailTime != shownThumbnail) {
+			BufferedImage image = (index != null) ? index.getThumbnail(timeMillis) : null;
+			imageLabel.setIcon((image != null) ? new ImageIcon(image) : null);
+			imageLabel.setVisible(image != null);
+			shownThumbnail = thumbnailTime;
+			window.pack();
+		}
+		timeLabel.setText(controls.calculateTime(timeMillis));
+
+		// Centring the preview above the position, keeping it within the slider
+		Point location = new Point(x, 0);
+		SwingUtilities.convertPointToScreen(location, slider);
+		Point sliderLocation = slider.getLocationOnScreen();
+		int left = Math.max(sliderLocation.x, Math.min(location.x - window.getWidth() / 2,
+				sliderLocation.x + slider.getWidth() - window.getWidth()));
+		window.setLocation(left, location.y - window.getHeight() - GAP);
+		if (!window.isVisible()) {
+			window.setVisible(true);
+		}
+	}
+
+	/**
+	 * Hides the preview
+	 */
+	public void hide() {
+		if (window != null && window.isVisible()) {
+			window.setVisible(false);
+		}
+	}
+
+	/**
+	 * Creates the window of the preview, owned by the window the slider is in
+	 */
+	private void createWindow() {
+		window = new JWindow(SwingUtilities.getWindowAncestor(slider));
+		window.setFocusableWindowState(false);
+		imageLabel = new JLabel();
+		imageLabel.setVisible(false);
+		timeLabel = new JLabel("", SwingConstants.CENTER);
+		timeLabel.setForeground(Color.WHITE);
+		timeLabel.setBorder(BorderFactory.createEmptyBorder(2, 4, 2, 4));
+		window.getContentPane().setBackground(Color.BLACK);
+		window.getContentPane().add(imageLabel, BorderLayout.CENTER);
+		window.getContentPane().add(timeLabel, BorderLayout.SOUTH);
+		((JComponent) window.getContentPane()).setBorder(BorderFactory.createLineBorder(Color.DARK_GRAY));
+		window.pack();
+	}
+}
@@ -0,0 +1,177 @@
+package vidivox.ui;
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import uk.co.caprica.vlcj.player.MediaPlayerEventAdapter;
+import vidivox.media.KeyframeIndex;
+import vidivox.util.LatencyRecorder;
+
+/**
+ * This class seeks the video for the seek slider. Seek requests are coalesced so that only the
+ * newest one is ever waiting: a single seeking thread makes one seek at a time, waits for vlc
+ * to report that it has landed (or for a short timeout), and then moves straight on to the
+ * latest target, dropping every target requested in between. While the slider is being dragged
+ * the seeks go to the nearest keyframe, which vlc can show without decoding the frames before
+ * it, and when the slider is released one precise seek is made to the exact time. The time each
+ * seek takes to land is recorded
+ */
+public class SeekScheduler extends MediaPlayerEventAdapter {
+
+	/**
+	 * Longest time waited for a seek to land before the next one is made anyway
+	 */
+	private static final long SEEK_TIMEOUT_MILLIS = 250;
+
+	/**
+	 * Distance from the target within which a reported time counts as the seek having landed
+	 */
+	private static final long LANDED_TOLERANCE_MILLIS = 150;
+
+	/**
+	 * Fields used to schedule the seeks, guarded by this object
+	 */
+	private final VideoPlayerComponent videoPlayer;			// Player being seeked
+	private long pendingTarget = -1;						// Newest target waiting to be seeked to, -1 if none
+	private boolean pendingPrecise = false;					// Whether the newest target is a precise seek
+	private long inFlightTarget = -1;						// Time of the seek waiting to land, -1 if none
+	private Thread seekThread;								// Thread making the seeks, started on the first seek
+
+	/**
+	 * Latency of each kind of seek, from being made to vlc reporting the new time
+	 */
+	private final LatencyRecorder keyframeLatency = new LatencyRecorder("Keyframe seek");
+	private final LatencyRecorder preciseLatency = new LatencyRecorder("Precise seek");
+
+	/**
+	 * Constructor for the scheduler of a player, which starts listening to its events
+	 *
+	 * @param videoPlayer - the player to seek
+	 */
+	public SeekScheduler(VideoPlayerComponent videoPlayer) {
+		this.videoPlayer = videoPlayer;
+		videoPlayer.getMediaPlayer().addMediaPlayerEventListener(this);
+		keyframeLatency.printOnExit();
+		preciseLatency.printOnExit();
+	}
+
+	/**
+	 * Starts loading the keyframes of the video so that dragging can use them, called when the
+	 * user starts dragging the slider
+	 */
+	public void prepare() {
+		KeyframeIndex.loadInBackground(videoPlayer.getVideoPath());
+	}
+
+	/**
+	 * Asks for the video to be seeked, replacing any target which has not been seeked to yet
+	 *
+	 * @param timeMillis - the time to seek to
+	 * @param precise - true to seek to the exact time, false to seek to the nearest keyframe
+	 */
+	public synchronized void seek(long timeMillis, boolean precise) {
+		pendingTarget = Math.max(0, timeMillis);
+		pendingPrecise = precise;
+		if (seekThread == null) {
+			seekThread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					seekLoop();
+				}
+			}, "Video seeker");
+			seekThread.setDaemon(true);
+			seekThread.start();
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gets the latency of the keyframe seeks made while dragging
+	 */
+	public LatencyRecorder getKeyframeLatency() {
+		return keyframeLatency;
+	}
+
+	/**
+	 * Gets the latency of the precise seeks made on release
+	 */
+	public LatencyRecorder getPreciseLatency() {
+		return preciseLatency;
+	}
+
+	/**
+	 * Called by vlcj when the time of the video changes, which is how a seek is known to have landed
+	 */
+	@Override
+	public void timeChanged(MediaPlayer mediaPlayer, long newTime) {
+		synchronized (this) {
+			if (inFlightTarget >= 0 && Math.abs(newTime - inFlightTarget) <= LANDED_TOLERANCE_MILLIS) {
+				inFlightTarget = -1;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Loop run by the seeking thread, making one seek at a time to the newest target
+	 */
+	private void seekLoop() {
+		while (true) {
+			long target;
+			boolean precise;
+			synchronized (this) {
+				while (pendingTarget < 0) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				target = pendingTarget;
+				precise = pendingPrecise;
+				pendingTarget = -1;
+			}
+
+			// Moving a keyframe seek onto the nearest keyframe, once the keyframes are known
+			if (!precise) {
+				String videoPath = videoPlayer.getVideoPath();
+				KeyframeIndex keyframes = (videoPath != null) ? KeyframeIndex.getIfLoaded(videoPath) : null;
+				if (keyframes != null) {
+					target = keyframes.nearest(target);
+				}
+			}
+
+			// Making the seek, then waiting for it to land before taking the next target
+			long start = System.nanoTime();
+			synchronized (this) {
+				inFlightTarget = target;
+			}
+			videoPlayer.getMediaPlayer().setTime(target);
+			boolean landed = waitForLanding(start);
+			if (landed) {
+				(precise ? preciseLatency : keyframeLatency).recordSince(start);
+			}
+		}
+	}
+
+	/**
+	 * Waits for the seek in flight to land, up to the timeout
+	 *
+	 * @param start - System.nanoTime() when the seek was made
+	 * @return true if it landed, false if the wait timed out
+	 */
+	private synchronized boolean waitForLanding(long start) {
+		long deadline = start + SEEK_TIMEOUT_MILLIS * 1000000;
+		while (inFlightTarget >= 0) {
+			long remaining = (deadline - System.nanoTime()) / 1000000;
+			if (remaining <= 0) {
+				inFlightTarget = -1;
+				return false;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+}
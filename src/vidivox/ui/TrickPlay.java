@@ -0,0 +1,237 @@
+package vidivox.ui;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import uk.co.caprica.vlcj.player.MediaPlayer;
+import vidivox.media.KeyframeIndex;
+
+/**
+ * This class fast forwards and rewinds the video. Fast forward plays the video at 2x, 4x or 8x
+ * through the playback rate of the player, so it plays smoothly instead of seeking. Rewind
+ * steps backwards from keyframe to keyframe of the KeyframeIndex, as those can be shown without
+ * decoding the frames before them, and only seeks when the next keyframe is reached. Pressing
+ * the same button again moves to the next speed, and past the fastest speed returns to normal.
+ * The overlays keep playing at the fast forward rate unless -Dvidivox.overlaysFollowTrickPlay=false
+ * is set, in which case they are silenced until normal speed is resumed, and are silenced while
+ * rewinding. All of the methods are called on the event dispatch thread
+ */
+public class TrickPlay {
+
+	/**
+	 * Speeds of fast forward and rewind, in the order they are stepped through
+	 */
+	private static final float[] SPEEDS = { 2, 4, 8 };
+
+	/**
+	 * Fastest rate the audio of the video is still played at, as it becomes noise above it
+	 */
+	private static final float MAX_AUDIBLE_RATE = 2;
+
+	/**
+	 * Time between the steps of rewinding
+	 */
+	private static final int REWIND_STEP_MILLIS = 100;
+
+	/**
+	 * Fields holding the state of the trick play
+	 */
+	private final ControlsPanel controlsPanel;		// Panel holding the video and its controls
+	private final Timer rewindTimer;				// Timer stepping backwards while rewinding
+	private int level = 0;							// Speed being played at, positive forward, negative rewinding, 0 if none
+	private boolean overlaysFollow = !"false".equals(System.getProperty("vidivox.overlaysFollowTrickPlay"));	// Whether overlays play during fast forward
+	private boolean playingBeforeRewind;			// Whether the video was playing when rewinding started
+	private double rewindTime;						// Time reached by rewinding, before snapping to a keyframe
+	private long shownTime;							// Time of the frame last seeked to while rewinding
+
+	/**
+	 * Constructor for the trick play of a controls panel
+	 *
+	 * @param controlsPanel - the panel holding the video and its controls
+	 */
+	public TrickPlay(ControlsPanel controlsPanel) {
+		this.controlsPanel = controlsPanel;
+		this.rewindTimer = new Timer(REWIND_STEP_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				stepBack();
+			}
+		});
+	}
+
+	/**
+	 * Sets whether the overlays keep playing during fast forward
+	 */
+	public void setOverlaysFollow(boolean overlaysFollow) {
+		this.overlaysFollow = overlaysFollow;
+	}
+
+	/**
+	 * Whether the video is being fast forwarded or rewound
+	 */
+	public boolean isActive() {
+		return level != 0;
+	}
+
+	/**
+	 * Fast forwards the video at the next speed, or returns to normal speed after the fastest
+	 */
+	public void fastForward() {
+		int next = (level > 0) ? level + 1 : 1;
+		if (next > SPEEDS.length) {
+			stop(true);
+			return;
+		}
+		if (level < 0) {
+			stopRewinding(false);
+		}
+		level = next;
+		float rate = SPEEDS[level - 1];
+
+		// Playing the video faster, the audio of the video only being kept at rates it can be followed at
+		MediaPlayer mediaPlayer = getMediaPlayer();
+		mediaPlayer.setRate(rate);
+		mediaPlayer.mute(rate > MAX_AUDIBLE_RATE);
+		if (!mediaPlayer.isPlaying()) {
+			mediaPlayer.play();
+		}
+		setDisplayRate(rate);
+		controlsPanel.getPauseButton().setIcon(controlsPanel.getPauseIcon());
+
+		// The drift corrector follows the rate of the video, so the overlays only need to be
+		// playing for them to keep up
+		if (overlaysFollow) {
+			if (!controlsPanel.getAudioMixer().isPlaying()) {
+				controlsPanel.startAudioPlayers(mediaPlayer.getTime());
+			}
+			controlsPanel.getAudioMixer().setStep(rate);
+		} else {
+			controlsPanel.stopAudioPlayers();
+		}
+	}
+
+	/**
+	 * Rewinds the video at the next speed, or returns to normal after the fastest
+	 */
+	public void rewind() {
+		int next = (level < 0) ? level - 1 : -1;
+		if (-next > SPEEDS.length) {
+			stop(true);
+			return;
+		}
+
+		// Starting to rewind from where the video is, with the video paused and silenced
+		if (level >= 0) {
+			MediaPlayer mediaPlayer = getMediaPlayer();
+			playingBeforeRewind = mediaPlayer.isPlaying();
+			if (level > 0) {
+				mediaPlayer.setRate(1);
+				setDisplayRate(1);
+			}
+			controlsPanel.stopAudioPlayers();
+			mediaPlayer.mute(true);
+			if (playingBeforeRewind) {
+				mediaPlayer.pause();
+			}
+			rewindTime = mediaPlayer.getTime();
+			shownTime = (long) rewindTime;
+			KeyframeIndex.loadInBackground(controlsPanel.getVideoPlayer().getVideoPath());
+			rewindTimer.start();
+		}
+		level = next;
+	}
+
+	/**
+	 * Returns to normal speed, e.g. before another control is used. A rewound video is left
+	 * paused where it was rewound to
+	 */
+	public void stop() {
+		stop(false);
+	}
+
+	/**
+	 * Returns to normal speed
+	 *
+	 * @param resume - whether a rewound video carries on playing if it was playing before rewinding
+	 */
+	private void stop(boolean resume) {
+		if (level > 0) {
+			MediaPlayer mediaPlayer = getMediaPlayer();
+			mediaPlayer.setRate(1);
+			mediaPlayer.mute(false);
+			setDisplayRate(1);
+			controlsPanel.getAudioMixer().setStep(1);
+
+			// Bringing back the overlays that were silenced while fast forwarding
+			if (!overlaysFollow && mediaPlayer.isPlaying() && !controlsPanel.getAudioMixer().isPlaying()) {
+				controlsPanel.startAudioPlayers(mediaPlayer.getTime());
+			}
+		} else if (level < 0) {
+			stopRewinding(resume);
+		}
+		level = 0;
+	}
+
+	/**
+	 * Stops rewinding
+	 *
+	 * @param resume - whether to carry on playing if the video was playing before rewinding
+	 */
+	private void stopRewinding(boolean resume) {
+		rewindTimer.stop();
+		MediaPlayer mediaPlayer = getMediaPlayer();
+		mediaPlayer.mute(false);
+		if (resume && playingBeforeRewind) {
+			mediaPlayer.play();
+			controlsPanel.startAudioPlayers(shownTime);
+		}
+		level = 0;
+	}
+
+	/**
+	 * A single step of rewinding. The rewound time moves back smoothly, and the video is seeked to
+	 * the keyframe before it whenever that is a different keyframe to the one shown
+	 */
+	private void stepBack() {
+		rewindTime -= REWIND_STEP_MILLIS * SPEEDS[-level - 1];
+		long target = Math.max(0, (long) rewindTime);
+		KeyframeIndex keyframes = getKeyframes();
+		if (keyframes != null && keyframes.size() > 0) {
+			target = keyframes.floor(target);
+		}
+		if (target != shownTime) {
+			shownTime = target;
+			getMediaPlayer().setTime(target);
+		}
+
+		// Stopping at the start of the video
+		if (rewindTime <= 0) {
+			stopRewinding(false);
+			playingBeforeRewind = false;
+		}
+	}
+
+	/**
+	 * Gets the keyframes of the video, or null until they have been loaded, exact seeks being
+	 * used until then
+	 */
+	private KeyframeIndex getKeyframes() {
+		String videoPath = controlsPanel.getVideoPlayer().getVideoPath();
+		return (videoPath != null) ? KeyframeIndex.getIfLoaded(videoPath) : null;
+	}
+
+	/**
+	 * Tells the slider the rate the video is playing at, so that it moves at the same speed
+	 */
+	private void setDisplayRate(float rate) {
+		PlaybackPositionUpdater positionUpdater = controlsPanel.getPositionUpdater();
+		if (positionUpdater != null) {
+			positionUpdater.setRate(rate);
+		}
+	}
+
+	private MediaPlayer getMediaPlayer() {
+		return controlsPanel.getVideoPlayer().getMediaPlayer();
+	}
+}
@@ -14,6 +14,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import uk.co.caprica.vlcj.binding.LibVlcConst;
+import vidivox.export.VideoEffects;
 
 /**
  * This class is used to create a panel which shows the list of video effects
@@ -309,7 +310,7 @@ public class VideoEffectsPanel extends JPanel {
 
 				// Getting the source and setting the contrast to users choice
 				JSlider source = (JSlider) e.getSource();
-				videoPlayer.getMediaPlayer().setContrast(source.getValue()/100);				
+				videoPlayer.getMediaPlayer().setContrast(source.getValue()/100.0f);				
 			}
 		});
 
@@ -323,7 +324,7 @@ public class VideoEffectsPanel extends JPanel {
 
 				// Getting the source and setting the brightness to users choice
 				JSlider source = (JSlider) e.getSource();
-				videoPlayer.getMediaPlayer().setSaturation(source.getValue()/100);				
+				videoPlayer.getMediaPlayer().setSaturation(source.getValue()/100.0f);				
 			}
 		});
 
@@ -337,7 +338,7 @@ public class VideoEffectsPanel extends JPanel {
 
 				// Getting the source and setting the brightness to users choice
 				JSlider source = (JSlider) e.getSource();
-				videoPlayer.getMediaPlayer().setGamma(source.getValue()/100);				
+				videoPlayer.getMediaPlayer().setGamma(source.getValue()/100.0f);				
 			}
 		});
 		
@@ -386,4 +387,12 @@ public class VideoEffectsPanel extends JPanel {
 			}
 		});
 	}
+
+	/**
+	 * Gets the effects currently set by the sliders, so they can be applied when exporting
+	 */
+	public VideoEffects getEffects() {
+		return new VideoEffects(brightnessSlider.getValue() / 100.0f, hueSlider.getValue(),
+				contrastSlider.getValue() / 100.0f, saturationSlider.getValue() / 100.0f, gammaSlider.getValue() / 100.0f);
+	}
 }
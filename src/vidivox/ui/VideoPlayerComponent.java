@@ -1,5 +1,6 @@
 package vidivox.ui;
 import uk.co.caprica.vlcj.component.EmbeddedMediaPlayerComponent;
+import vidivox.media.ThumbnailIndex;
 
 /**
  * This class serves as an extension of the media player component from vlcj
@@ -24,6 +25,8 @@ public class VideoPlayerComponent extends EmbeddedMediaPlayerComponent {
 	public void playVideo(String path) {
 		videoPath = path;
 		getMediaPlayer().playMedia(path);
+		// Indexing the keyframes and thumbnails of the video in the background for the seek slider
+		ThumbnailIndex.loadInBackground(path);
 	}
 	
 	public String getVideoPath() {
@@ -0,0 +1,202 @@
+package vidivox.util;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class provides the directories vidivox keeps its caches in (under ~/.vidivox/cache) along
+ * with the helpers the caches share: hashing keys, identifying a file by its path, size and
+ * modification time, and evicting the least recently used entries of a directory when it grows
+ * past its size budget. Entries which are being used can be pinned so they are never evicted
+ */
+public class CacheDirectory {
+
+	/**
+	 * Root directory of all of the caches, which can be moved with -Dvidivox.cacheDirectory
+	 */
+	private static final File ROOT = new File(System.getProperty("vidivox.cacheDirectory",
+			System.getProperty("user.home") + File.separator + ".vidivox" + File.separator + "cache"));
+
+	/**
+	 * Number of pins held on each pinned entry, also locked while entries are evicted
+	 */
+	private static final Map<File, Integer> pins = new HashMap<>();
+
+	/**
+	 * Gets (and creates if needed) the directory of a cache
+	 *
+	 * @param name - name of the cache
+	 * @return the directory of the cache
+	 */
+	public static File get(String name) {
+		File directory = new File(ROOT, name);
+		directory.mkdirs();
+		return directory;
+	}
+
+	/**
+	 * Gets a key identifying the current contents of a file, made from its path, size and
+	 * modification time, so that the key changes whenever the file is replaced or edited
+	 *
+	 * @param file - the file to identify
+	 * @return a hex string key
+	 */
+	public static String fileKey(File file) {
+		return hash(file.getAbsolutePath(), String.valueOf(file.length()), String.valueOf(file.lastModified()));
+	}
+
+	/**
+	 * Hashes the given parts into a hex string key
+	 *
+	 * @param parts - the values making up the key
+	 * @return the SHA-1 of the parts as hex
+	 */
+	public static String hash(String... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for (String part : parts) {
+				digest.update(String.valueOf(part).getBytes("UTF-8"));
+				// Separating the parts so that ("ab", "c") and ("a", "bc") differ
+				digest.update((byte) 0);
+			}
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest()) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Marks a cache entry as just used so that it is the last to be evicted
+	 */
+	public static void touch(File entry) {
+		entry.setLastModified(System.currentTimeMillis());
+	}
+
+	/**
+	 * Pins an entry so it is not evicted until it is unpinned, e.g. while an export reads it. An
+	 * entry should be pinned before it is looked up, so it cannot be evicted in between
+	 *
+	 * @param entry - the entry, which does not have to exist yet
+	 */
+	public static void pin(File entry) {
+		File key = entry.getAbsoluteFile();
+		synchronized (pins) {
+			Integer count = pins.get(key);
+			pins.put(key, (count == null) ? 1 : count + 1);
+		}
+	}
+
+	/**
+	 * Releases a pin taken with pin()
+	 *
+	 * @param entry - the entry
+	 */
+	public static void unpin(File entry) {
+		File key = entry.getAbsoluteFile();
+		synchronized (pins) {
+			Integer count = pins.get(key);
+			if (count == null || count <= 1) {
+				pins.remove(key);
+			} else {
+				pins.put(key, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files of a cache directory until the directory is within
+	 * its size budget
+	 *
+	 * @param directory - the cache directory
+	 * @param maxBytes - the size budget of the directory
+	 * @return the files which were deleted
+	 */
+	public static List<File> trim(File directory, long maxBytes) {
+		return trim(directory, maxBytes, Collections.<File>emptyList());
+	}
+
+	/**
+	 * Deletes the least recently used files of a cache directory until the directory is within
+	 * its size budget, never deleting the files which are still in use or pinned
+	 *
+	 * @param directory - the cache directory
+	 * @param maxBytes - the size budget of the directory
+	 * @param keep - absolute files which must not be deleted
+	 * @return the files which were deleted
+	 */
+	public static List<File> trim(File directory, long maxBytes, Collection<File> keep) {
+		List<File> deleted = new ArrayList<>();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return deleted;
+		}
+
+		// Adding up the size of the directory
+		long total = 0;
+		for (File file : files) {
+			total += file.length();
+		}
+		if (total <= maxBytes) {
+			return deleted;
+		}
+
+		// Deleting the oldest files first
+		List<File> oldestFirst = new ArrayList<>(Arrays.asList(files));
+		Collections.sort(oldestFirst, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File file : oldestFirst) {
+			if (total <= maxBytes) {
+				break;
+			}
+			if (keep.contains(file.getAbsoluteFile())) {
+				continue;
+			}
+			// Deleting while holding the pins, so an entry cannot be pinned as it is deleted
+			synchronized (pins) {
+				if (pins.containsKey(file.getAbsoluteFile())) {
+					continue;
+				}
+				long length = file.length();
+				if (file.delete()) {
+					total -= length;
+					deleted.add(file);
+				}
+			}
+		}
+		return deleted;
+	}
+
+	/**
+	 * Reads a size budget in megabytes from a system property
+	 *
+	 * @param property - name of the system property
+	 * @param defaultMegabytes - budget used if the property is not set or invalid
+	 * @return the budget in bytes
+	 */
+	public static long budget(String property, long defaultMegabytes) {
+		long megabytes = defaultMegabytes;
+		try {
+			megabytes = Long.parseLong(System.getProperty(property, String.valueOf(defaultMegabytes)));
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid value for " + property + ", using " + defaultMegabytes + "MB");
+		}
+		return megabytes * 1024 * 1024;
+	}
+}
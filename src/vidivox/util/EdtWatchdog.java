@@ -0,0 +1,384 @@
+package vidivox.util;
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class watches the event dispatch thread for stalls. It replaces the system event queue
+ * with one that times every event it dispatches, and a watchdog thread samples the event
+ * dispatch thread every few milliseconds. When one event has been handled for longer than
+ * -Dvidivox.edtStallMillis (200ms by default) the stack of the event dispatch thread is taken,
+ * so the code blocking it is known, and the stall is printed once the event finishes. The time
+ * taken to handle each event and the delay between each input event and its handling are kept
+ * in histograms, which are printed when the application exits if -Dvidivox.printLatency=true is
+ * set. Modal dialogs dispatch events from inside the event that opened them, so the time spent
+ * in such a nested loop is not counted against the event that opened it. The watchdog can be
+ * turned off with -Dvidivox.edtWatchdog=false
+ */
+public class EdtWatchdog {
+
+	/**
+	 * Number of the latest stalls kept
+	 */
+	private static final int MAX_STALLS = 32;
+
+	/**
+	 * The only instance of the watchdog, null until it is installed
+	 */
+	private static EdtWatchdog instance;
+
+	/**
+	 * This class holds one stall of the event dispatch thread
+	 */
+	public static class Stall {
+		private final String event;					// Description of the event being handled
+		private final long startedAt;				// Time the stall started, from System.currentTimeMillis()
+		private final long startNanos;				// Time the stall started, from System.nanoTime()
+		private final StackTraceElement[] stack;	// Stack of the event dispatch thread during the stall
+		private volatile long durationNanos = -1;	// Time the event was busy for, -1 while it still is
+
+		private Stall(String event, long startNanos, StackTraceElement[] stack) {
+			this.event = event;
+			this.startNanos = startNanos;
+			this.startedAt = System.currentTimeMillis() - (System.nanoTime() - startNanos) / 1000000;
+			this.stack = stack;
+		}
+
+		public String getEvent() {
+			return event;
+		}
+
+		public long getStartedAt() {
+			return startedAt;
+		}
+
+		public StackTraceElement[] getStack() {
+			return stack;
+		}
+
+		/**
+		 * Gets how long the event dispatch thread was stalled for
+		 *
+		 * @return the time in milliseconds, or -1 if it is still stalled
+		 */
+		public double getDurationMillis() {
+			return (durationNanos < 0) ? -1 : durationNanos / 1000000.0;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder text = new StringBuilder("Event dispatch thread stalled for ");
+			text.append(durationNanos < 0 ? "over " + (System.currentTimeMillis() - startedAt) : String.format("%.0f", getDurationMillis()));
+			text.append("ms at ").append(new Date(startedAt)).append(" handling ").append(event);
+			for (StackTraceElement element : stack) {
+				text.append("\n\tat ").append(element);
+			}
+			return text.toString();
+		}
+	}
+
+	/**
+	 * Settings of the watchdog
+	 */
+	private final long thresholdNanos;			// Time an event must be busy for to count as a stall
+	private final long sampleMillis;			// Time between samples of the event dispatch thread
+
+	/**
+	 * Measurements of the event dispatch thread
+	 */
+	private final LatencyRecorder handling = new LatencyRecorder("EDT event handling", 4096);
+	private final LatencyHistogram handlingHistogram = new LatencyHistogram("EDT event handling buckets");
+	private final LatencyHistogram inputDelayHistogram = new LatencyHistogram("EDT input delay buckets");
+	private final ArrayDeque<Stall> stalls = new ArrayDeque<>();	// Latest stalls, guarded by itself
+	private long stallCount = 0;									// Number of stalls ever seen, guarded by stalls
+	private final ConcurrentLinkedQueue<Stall> finished = new ConcurrentLinkedQueue<>();	// Stalls waiting to be printed
+
+	/**
+	 * State of the event being dispatched. The start of the busy segment is read by the watchdog
+	 * thread, everything else is only used on the event dispatch thread
+	 */
+	private volatile Thread dispatchThread;			// Thread dispatching the events
+	private volatile long busySince = 0;			// Start of the current busy segment in nanoseconds, 0 when idle
+	private volatile String busyEvent;				// Description of the event being handled
+	private final AtomicReference<Stall> openStall = new AtomicReference<>();	// Stall of the current busy segment, if any
+	private long[] ownNanos = new long[8];			// Time handled so far by each nested event
+	private int depth = 0;							// Number of events being dispatched inside each other
+
+	/**
+	 * Installs the watchdog unless it has been turned off, which should be done once when the
+	 * application starts
+	 *
+	 * @return the watchdog, or null if it is turned off
+	 */
+	public static synchronized EdtWatchdog install() {
+		if (instance == null && !"false".equals(System.getProperty("vidivox.edtWatchdog"))) {
+			long thresholdMillis = 200;
+			try {
+				thresholdMillis = Math.max(1, Long.parseLong(System.getProperty("vidivox.edtStallMillis", "200")));
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid vidivox.edtStallMillis, using 200ms");
+			}
+			instance = new EdtWatchdog(thresholdMillis);
+			instance.start();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the installed watchdog
+	 *
+	 * @return the watchdog, or null if it has not been installed
+	 */
+	public static synchronized EdtWatchdog getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Constructor for a watchdog
+	 *
+	 * @param thresholdMillis - time an event must be busy for to count as a stall
+	 */
+	private EdtWatchdog(long thresholdMillis) {
+		this.thresholdNanos = thresholdMillis * 1000000;
+		this.sampleMillis = Math.max(10, Math.min(50, thresholdMillis / 4));
+	}
+
+	/**
+	 * Replaces the event queue and starts the watchdog thread
+	 */
+	private void start() {
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(new EventQueue() {
+			@Override
+			protected void dispatchEvent(AWTEvent event) {
+				eventStarted(event);
+				try {
+					super.dispatchEvent(event);
+				} finally {
+					eventFinished();
+				}
+			}
+
+			@Override
+			public AWTEvent getNextEvent() throws InterruptedException {
+				waitStarted();
+				try {
+					return super.getNextEvent();
+				} finally {
+					waitFinished();
+				}
+			}
+		});
+
+		Thread watchdog = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Thread.sleep(sampleMillis);
+						sample();
+					}
+				} catch (InterruptedException e) {
+					// Stopping the watchdog
+				}
+			}
+		}, "EDT watchdog");
+		watchdog.setDaemon(true);
+		watchdog.setPriority(Thread.MAX_PRIORITY);
+		watchdog.start();
+
+		// Printing the measurements when the application exits, only if asked for
+		if (Boolean.getBoolean("vidivox.printLatency")) {
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					if (handling.getCount() > 0) {
+						System.out.println(getSummary());
+					}
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Called on the event dispatch thread before an event is dispatched
+	 */
+	private void eventStarted(AWTEvent event) {
+		long now = System.nanoTime();
+		dispatchThread = Thread.currentThread();
+
+		// Measuring how long an input event waited in the queue. Its time comes from the wall clock
+		if (event instanceof InputEvent) {
+			long when = ((InputEvent) event).getWhen();
+			long delayMillis = System.currentTimeMillis() - when;
+			if (when > 0 && delayMillis >= 0) {
+				inputDelayHistogram.record(delayMillis * 1000000);
+			}
+		}
+
+		// The event which dispatched this one (e.g. from a modal dialog) stops being busy
+		if (depth > 0 && busySince != 0) {
+			ownNanos[depth - 1] += now - busySince;
+			closeStall(now);
+		}
+		if (depth == ownNanos.length) {
+			ownNanos = Arrays.copyOf(ownNanos, depth * 2);
+		}
+		ownNanos[depth] = 0;
+		depth++;
+		busyEvent = describe(event);
+		busySince = now;
+	}
+
+	/**
+	 * Called on the event dispatch thread after an event has been dispatched
+	 */
+	private void eventFinished() {
+		long now = System.nanoTime();
+		closeStall(now);
+		depth--;
+		long own = ownNanos[depth] + now - busySince;
+		handling.record(own);
+		handlingHistogram.record(own);
+
+		// The event which dispatched this one is busy again, otherwise the thread is idle
+		busySince = (depth > 0) ? now : 0;
+	}
+
+	/**
+	 * Called on the event dispatch thread when it waits for the next event. Inside an event this
+	 * means a modal dialog (or other nested loop) is waiting, which does not count as busy
+	 */
+	private void waitStarted() {
+		if (depth > 0 && busySince != 0 && Thread.currentThread() == dispatchThread) {
+			long now = System.nanoTime();
+			ownNanos[depth - 1] += now - busySince;
+			closeStall(now);
+			busySince = 0;
+		}
+	}
+
+	/**
+	 * Called on the event dispatch thread when it has the next event, or stops waiting for it
+	 */
+	private void waitFinished() {
+		if (depth > 0 && Thread.currentThread() == dispatchThread) {
+			busySince = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Finishes the stall of the busy segment which is ending, if there is one
+	 */
+	private void closeStall(long now) {
+		Stall stall = openStall.getAndSet(null);
+		if (stall != null) {
+			finishStall(stall, now);
+		}
+	}
+
+	/**
+	 * Sets how long a stall lasted and queues it to be printed by the watchdog thread, so the
+	 * event dispatch thread is not held up any further
+	 */
+	private void finishStall(Stall stall, long now) {
+		stall.durationNanos = now - stall.startNanos;
+		finished.add(stall);
+	}
+
+	/**
+	 * Called on the watchdog thread to check whether the event dispatch thread is stalled
+	 */
+	private void sample() {
+		Stall done;
+		while ((done = finished.poll()) != null) {
+			System.err.println(done);
+		}
+
+		long since = busySince;
+		Thread thread = dispatchThread;
+		if (since == 0 || thread == null || openStall.get() != null || System.nanoTime() - since < thresholdNanos) {
+			return;
+		}
+
+		// Taking the stack of the code blocking the event dispatch thread and recording the stall,
+		// which the event dispatch thread finishes when the segment ends
+		Stall stall = new Stall(busyEvent, since, thread.getStackTrace());
+		synchronized (stalls) {
+			stalls.addLast(stall);
+			if (stalls.size() > MAX_STALLS) {
+				stalls.removeFirst();
+			}
+			stallCount++;
+		}
+		openStall.set(stall);
+
+		// The segment may have ended before the stall was set, in which case it is finished here
+		if (busySince != since && openStall.compareAndSet(stall, null)) {
+			finishStall(stall, System.nanoTime());
+		}
+	}
+
+	/**
+	 * Describes an event by its type and what it came from
+	 */
+	private static String describe(AWTEvent event) {
+		Object source = event.getSource();
+		String sourceName = (source == null) ? "null" : source.getClass().getName();
+		return event.getClass().getSimpleName() + "[" + event.getID() + "] from " + sourceName;
+	}
+
+	/**
+	 * Gets the latest stalls, oldest first
+	 */
+	public List<Stall> getStalls() {
+		synchronized (stalls) {
+			return new ArrayList<>(stalls);
+		}
+	}
+
+	/**
+	 * Gets the number of stalls since the watchdog was installed
+	 */
+	public long getStallCount() {
+		synchronized (stalls) {
+			return stallCount;
+		}
+	}
+
+	/**
+	 * Gets the percentiles of the time taken to handle the latest events
+	 */
+	public LatencyRecorder getHandlingLatency() {
+		return handling;
+	}
+
+	/**
+	 * Gets the histogram of the time taken to handle every event
+	 */
+	public LatencyHistogram getHandlingHistogram() {
+		return handlingHistogram;
+	}
+
+	/**
+	 * Gets the histogram of the time input events waited before being handled
+	 */
+	public LatencyHistogram getInputDelayHistogram() {
+		return inputDelayHistogram;
+	}
+
+	/**
+	 * Gets a summary of the measurements, e.g. for printing
+	 */
+	public String getSummary() {
+		return handling.getSummary() + "\n" + handlingHistogram.getSummary() + "\n" + inputDelayHistogram.getSummary()
+				+ "\nEDT stalls over " + (thresholdNanos / 1000000) + "ms: " + getStallCount();
+	}
+}
@@ -0,0 +1,92 @@
+package vidivox.util;
+
+/**
+ * This class counts measurements in buckets whose upper bounds double from 1ms up to about a
+ * second, with a last bucket for anything longer. Unlike the LatencyRecorder it counts every
+ * measurement ever made, so it shows how often rare slow operations happen
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Upper bounds of the buckets in milliseconds, the last bucket having none
+	 */
+	private static final long[] BOUNDS_MILLIS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+
+	/**
+	 * Fields holding the counts
+	 */
+	private final String name;				// Name of the operation, used in the summary
+	private final long[] counts;			// Count of measurements in each bucket
+	private long total = 0;					// Number of measurements ever recorded
+
+	/**
+	 * Constructor for a histogram
+	 *
+	 * @param name - name of the operation being measured
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+		this.counts = new long[BOUNDS_MILLIS.length + 1];
+	}
+
+	/**
+	 * Records one measurement
+	 *
+	 * @param nanos - time the operation took in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		int bucket = 0;
+		while (bucket < BOUNDS_MILLIS.length && nanos >= BOUNDS_MILLIS[bucket] * 1000000) {
+			bucket++;
+		}
+		counts[bucket]++;
+		total++;
+	}
+
+	/**
+	 * Gets the number of buckets
+	 */
+	public int getBucketCount() {
+		return counts.length;
+	}
+
+	/**
+	 * Gets the upper bound of a bucket in milliseconds
+	 *
+	 * @param bucket - index of the bucket
+	 * @return the bound, or Long.MAX_VALUE for the last bucket
+	 */
+	public long getUpperBoundMillis(int bucket) {
+		return (bucket < BOUNDS_MILLIS.length) ? BOUNDS_MILLIS[bucket] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Gets the number of measurements in a bucket
+	 *
+	 * @param bucket - index of the bucket
+	 */
+	public synchronized long getCount(int bucket) {
+		return counts[bucket];
+	}
+
+	/**
+	 * Gets the number of measurements ever recorded
+	 */
+	public synchronized long getCount() {
+		return total;
+	}
+
+	/**
+	 * Gets a one line summary of the counts, leaving out empty buckets, e.g. for printing
+	 */
+	public synchronized String getSummary() {
+		StringBuilder summary = new StringBuilder(name).append(": n=").append(total);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				summary.append(i < BOUNDS_MILLIS.length ? " <" + BOUNDS_MILLIS[i] + "ms=" : " >=" + BOUNDS_MILLIS[i - 1] + "ms=");
+				summary.append(counts[i]);
+			}
+		}
+		return summary.toString();
+	}
+}
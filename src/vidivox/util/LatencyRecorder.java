@@ -0,0 +1,109 @@
+package vidivox.util;
+import java.util.Arrays;
+
+/**
+ * This class records how long an operation takes each time it runs and reports percentiles of
+ * the recent measurements. Only the latest measurements are kept, so the memory used is fixed
+ */
+public class LatencyRecorder {
+
+	/**
+	 * Fields holding the measurements
+	 */
+	private final String name;			// Name of the operation, used in the summary
+	private final long[] samples;		// Ring of the latest measurements in nanoseconds
+	private int next = 0;				// Index the next measurement is stored at
+	private long count = 0;				// Number of measurements ever recorded
+	private long max = 0;				// Longest measurement ever recorded
+
+	/**
+	 * Constructor for a recorder keeping the latest 1024 measurements
+	 *
+	 * @param name - name of the operation being measured
+	 */
+	public LatencyRecorder(String name) {
+		this(name, 1024);
+	}
+
+	/**
+	 * Constructor for a recorder
+	 *
+	 * @param name - name of the operation being measured
+	 * @param capacity - number of latest measurements kept
+	 */
+	public LatencyRecorder(String name, int capacity) {
+		this.name = name;
+		this.samples = new long[capacity];
+	}
+
+	/**
+	 * Records one measurement
+	 *
+	 * @param nanos - time the operation took in nanoseconds
+	 */
+	public synchronized void record(long nanos) {
+		samples[next] = nanos;
+		next = (next + 1) % samples.length;
+		count++;
+		max = Math.max(max, nanos);
+	}
+
+	/**
+	 * Records the time since an operation started
+	 *
+	 * @param startNanos - System.nanoTime() when the operation started
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Gets a percentile of the latest measurements
+	 *
+	 * @param percentile - the percentile wanted, between 0 and 100
+	 * @return the percentile in milliseconds, or 0 if nothing has been recorded
+	 */
+	public synchronized double getPercentileMillis(double percentile) {
+		int size = (int) Math.min(count, samples.length);
+		if (size == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(samples, size);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * size) - 1;
+		return sorted[Math.max(0, Math.min(size - 1, index))] / 1000000.0;
+	}
+
+	/**
+	 * Gets the number of measurements ever recorded
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Prints the summary of the measurements when the application exits, only if there are any
+	 * and -Dvidivox.printLatency=true is set
+	 */
+	public void printOnExit() {
+		if (!Boolean.getBoolean("vidivox.printLatency")) {
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				if (getCount() > 0) {
+					System.out.println(getSummary());
+				}
+			}
+		}));
+	}
+
+	/**
+	 * Gets a one line summary of the measurements, e.g. for printing
+	 */
+	public synchronized String getSummary() {
+		return String.format("%s: n=%d p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms", name, count,
+				getPercentileMillis(50), getPercentileMillis(90), getPercentileMillis(99), max / 1000000.0);
+	}
+}
@@ -1,5 +1,4 @@
 package vidivox.worker;
-import vidivox.audio.AudioOverlay;
 import javax.swing.*;
 
 /**
@@ -32,16 +31,6 @@ public class AudioPlayWorker extends SwingWorker<Void,Void>{
     	this(filePath, volume, 0);
     }
 
-    /**
-     * Constructor used to call another constructor while getting important info from fields
-     * 
-     * @param overlay - field of type AudioOverlay containing important audio formatting components
-     * @param currentTime - double containing the current time
-     */
-    public AudioPlayWorker(AudioOverlay overlay, double currentTime) {
-        this(overlay.getFilePath(), overlay.getVolume(), overlay.getStartTime()-currentTime);
-    }
-
     /**
      * Constructor called to initialize fields in the class
      * 
@@ -62,17 +51,10 @@ public class AudioPlayWorker extends SwingWorker<Void,Void>{
     @Override
     protected Void doInBackground() throws Exception {
 
-    	// Checking if the user specified a time other than the start to play the audio
-        if (startTimeOffset > 0) {
-        	// Sleeping the thread for the duration as specified by the user
-            Thread.sleep((long) (startTimeOffset *1000));
-            // Building the process to play the audio and starting it
-            playerProcess = new ProcessBuilder("/bin/bash","-c", "ffplay -nodisp -autoexit -af volume=" + (((float)volume)/100) + " \"" + filePath+"\"").start();
-        } else {
-        	// Building the process to play the audio and starting it
-            playerProcess=new ProcessBuilder("/bin/bash","-c","ffplay -nodisp -autoexit -af volume="+(((float)volume)/100)+
-            		" -ss "+(-startTimeOffset)+" \""+filePath+"\"").start();
-        }
+    	// Building the process to play the audio from the offset and starting it. Overlays played
+    	// along with the video are scheduled by the AudioMixer instead, so no sleeping is done here
+        playerProcess=new ProcessBuilder("/bin/bash","-c","ffplay -nodisp -autoexit -af volume="+(((float)volume)/100)+
+        		" -ss "+Math.max(0, -startTimeOffset)+" \""+filePath+"\"").start();
         
         playerProcess.waitFor();
         return null;
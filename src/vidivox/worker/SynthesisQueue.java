@@ -0,0 +1,100 @@
+package vidivox.worker;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import vidivox.speech.FestivalPool;
+
+/**
+ * This class runs every SpeechSynthesisWorker of the application on a fixed number of threads,
+ * one for each festival interpreter of the FestivalPool, rather than on the shared SwingWorker
+ * threads. Waiting syntheses are ordered by priority: a synthesis asked for by the user (e.g.
+ * after typing) runs first, and the commentaries of an opened project follow in order of their
+ * start time, so the beginning of the video is ready to play first
+ */
+public class SynthesisQueue {
+
+	/**
+	 * Priority of a synthesis asked for by the user, ahead of any start time
+	 */
+	public static final double INTERACTIVE = -1;
+
+	/**
+	 * The single queue shared by the whole application
+	 */
+	private static final SynthesisQueue instance = new SynthesisQueue(FestivalPool.getInstance().getSize());
+
+	/**
+	 * Fields of the queue
+	 */
+	private final ThreadPoolExecutor executor;					// Threads running the syntheses
+	private final AtomicLong submitted = new AtomicLong();		// Counter keeping equal priorities in order
+
+	/**
+	 * Gets the queue shared by the application
+	 */
+	public static SynthesisQueue getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Constructor for the queue
+	 *
+	 * @param threads - number of syntheses run at once
+	 */
+	private SynthesisQueue(int threads) {
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Speech synthesis");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queues a synthesis
+	 *
+	 * @param worker - the synthesis to run
+	 * @param priority - INTERACTIVE, or the start time of the commentary in seconds
+	 */
+	public void submit(SpeechSynthesisWorker worker, double priority) {
+		executor.execute(new QueuedSynthesis(worker, priority, submitted.getAndIncrement()));
+	}
+
+	/**
+	 * This class is a synthesis waiting in the queue, ordered by its priority and then by the
+	 * order it was submitted in
+	 */
+	private static class QueuedSynthesis implements Runnable, Comparable<QueuedSynthesis> {
+
+		/**
+		 * Fields of the waiting synthesis
+		 */
+		private final SpeechSynthesisWorker worker;		// The synthesis to run
+		private final double priority;					// Lower values run first
+		private final long sequence;					// Order the synthesis was submitted in
+
+		QueuedSynthesis(SpeechSynthesisWorker worker, double priority, long sequence) {
+			this.worker = worker;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			// A SwingWorker can be run on any thread and still calls done() on the dispatch thread
+			worker.run();
+		}
+
+		@Override
+		public int compareTo(QueuedSynthesis other) {
+			int byPriority = Double.compare(priority, other.priority);
+			return (byPriority != 0) ? byPriority : Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package vidivox.worker;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.Timer;
+
+import vidivox.audio.CommentaryOverlay;
+
+/**
+ * This class schedules the speech synthesis of a single commentary overlay. Edits made while
+ * typing are coalesced so that only the latest text is synthesized once the user has stopped
+ * typing for a short while, at most one SpeechSynthesisWorker runs for the overlay at a time,
+ * and a synthesis which has been superseded is cancelled before it starts its process. The
+ * syntheses are run by the SynthesisQueue. All of its methods are called on the event
+ * dispatch thread
+ */
+public class SynthesisScheduler {
+
+	/**
+	 * Time without edits after which the latest text is synthesized
+	 */
+	private static final int IDLE_MILLIS = 400;
+
+	/**
+	 * Interface used to inform the overlay when its audio has been synthesized
+	 */
+	public interface Listener {
+		/**
+		 * Called on the event dispatch thread when the latest text has been synthesized
+		 *
+		 * @param filePath - path of the synthesized wav file
+		 */
+		void synthesized(String filePath);
+
+		/**
+		 * Called on the event dispatch thread when the synthesis of the latest text failed
+		 */
+		void failed();
+	}
+
+	/**
+	 * Fields used to schedule the synthesis
+	 */
+	private final CommentaryOverlay overlay;		// Overlay the audio is synthesized for
+	private final String fileName;					// Name of the file the audio is written to
+	private final Listener listener;				// Listener informed of finished syntheses
+	private final Timer idleTimer;					// Timer started again on every edit
+	private SpeechSynthesisWorker runningWorker;	// Worker currently synthesizing, if any
+	private String pendingText;						// Latest text waiting to be synthesized
+	private String lastRequest;						// Text and voice of the latest synthesis started
+
+	/**
+	 * Constructor for the scheduler of an overlay
+	 *
+	 * @param overlay - the overlay the audio is synthesized for
+	 * @param fileName - name of the file the audio is written to
+	 * @param listener - listener informed of finished syntheses
+	 */
+	public SynthesisScheduler(CommentaryOverlay overlay, String fileName, Listener listener) {
+		this.overlay = overlay;
+		this.fileName = fileName;
+		this.listener = listener;
+		this.idleTimer = new Timer(IDLE_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				startSynthesis(SynthesisQueue.INTERACTIVE);
+			}
+		});
+		idleTimer.setRepeats(false);
+	}
+
+	/**
+	 * Asks for the text to be synthesized once the user stops editing it. Any earlier text that
+	 * is still waiting is replaced without ever being synthesized
+	 *
+	 * @param text - the latest text of the overlay
+	 */
+	public void request(String text) {
+		pendingText = text;
+		idleTimer.restart();
+	}
+
+	/**
+	 * Asks for the text to be synthesized straight away, e.g. after the voice was changed
+	 *
+	 * @param text - the latest text of the overlay
+	 */
+	public void requestNow(String text) {
+		pendingText = text;
+		idleTimer.stop();
+		startSynthesis(SynthesisQueue.INTERACTIVE);
+	}
+
+	/**
+	 * Queues the text to be synthesized behind anything the user is waiting for, e.g. when a
+	 * project is opened
+	 *
+	 * @param text - the text of the overlay
+	 * @param startTime - start time of the overlay in seconds, earlier overlays are synthesized first
+	 */
+	public void requestInOrder(String text, float startTime) {
+		pendingText = text;
+		idleTimer.stop();
+		startSynthesis(Math.max(0, startTime));
+	}
+
+	/**
+	 * Cancels any waiting or running synthesis
+	 */
+	public void cancel() {
+		idleTimer.stop();
+		pendingText = null;
+		if (runningWorker != null) {
+			runningWorker.kill();
+			runningWorker = null;
+		}
+		lastRequest = null;
+	}
+
+	/**
+	 * Whether a synthesis is waiting or running
+	 */
+	public boolean isBusy() {
+		return idleTimer.isRunning() || (runningWorker != null && !runningWorker.isDone());
+	}
+
+	/**
+	 * Queues the pending text to be synthesized, cancelling the synthesis it supersedes
+	 *
+	 * @param priority - priority of the synthesis in the SynthesisQueue
+	 */
+	private void startSynthesis(double priority) {
+		final String text = pendingText;
+		pendingText = null;
+		if (text == null || text.isEmpty()) {
+			return;
+		}
+
+		// Nothing to do if this exact text and voice is already being (or has been) synthesized
+		String request = text + "\t" + overlay.getSelectedVoice() + "\t" + overlay.getSelectedPitch();
+		if (request.equals(lastRequest)) {
+			return;
+		}
+		lastRequest = request;
+
+		// Only one synthesis runs per overlay, so the superseded one is stopped first
+		if (runningWorker != null && !runningWorker.isDone()) {
+			runningWorker.kill();
+		}
+
+		runningWorker = new SpeechSynthesisWorker(text, fileName, overlay) {
+			@Override
+			protected void done() {
+				super.done();
+				// Only the synthesis of the latest text is reported
+				if (runningWorker == this) {
+					runningWorker = null;
+					if (!isCancelled() && isSynthesized()) {
+						listener.synthesized(filePath);
+					} else {
+						// Forgetting the failed request so asking again for the same text retries it
+						lastRequest = null;
+						if (!isCancelled()) {
+							listener.failed();
+						}
+					}
+				}
+			}
+		};
+		SynthesisQueue.getInstance().submit(runningWorker, priority);
+	}
+}